@@ -0,0 +1,201 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+
+/**
+ * Extrapolation of a slowly converging series from its partial sums, so that
+ * a series truncated at a modest number of terms gives an estimate of its
+ * limit with an error estimate. Series and ComplexSeries sum the terms over
+ * hypercube shells, so partial sum n is the series truncated to n + 1 terms
+ * in every dimension, and extrapolate the last window partial sums:
+ *  WYNN:       Wynn's epsilon algorithm, which is exact for sums of geometric
+ *              tails and suits alternating and oscillating series, such as
+ *              those of large detunings and long times.
+ *  RICHARDSON: polynomial extrapolation in 1/n to 1/n = 0, which suits tails
+ *              that fall like a power of the truncation n.
+ *
+ * Every column of the table is a candidate; the estimate is the newest entry
+ * of the column whose last entries differ least, and the error estimate is
+ * the change of that entry from the two before it in the column. It is an
+ * estimate, not a bound: a tail that has not settled into its asymptotic
+ * form yet can fool either method.
+ *
+ * @author forest
+ */
+public class Acceleration {
+
+    /**
+     * Extrapolation methods
+     */
+    public enum Method {
+        WYNN, RICHARDSON
+    }
+
+    final Method method; //the extrapolation
+    final int window; //number of trailing partial sums extrapolated
+
+    /**
+     * Acceleration over the default window, the last 16 partial sums for
+     * WYNN and the last 6 for RICHARDSON, whose polynomials are unstable at
+     * high orders
+     *
+     * @param method the extrapolation
+     */
+    public Acceleration(Method method) {
+        this(method, method == Method.WYNN ? 16 : 6);
+    }
+
+    /**
+     * @param method the extrapolation
+     * @param window number of trailing partial sums extrapolated, at least 2
+     */
+    public Acceleration(Method method, int window) {
+        if (window < 2) {
+            throw new IllegalArgumentException("Acceleration needs at least two partial sums");
+        }
+        this.method = method;
+        this.window = window;
+    }
+
+    /**
+     * Extrapolates a sequence of partial sums to its limit
+     *
+     * @param partial partial sums, partial[n] of n + 1 terms in every dimension
+     * @return {estimate, error estimate} of the limit
+     */
+    public double[] extrapolate(double[] partial) {
+        double[] limit = extrapolate(partial, new double[partial.length]);
+        return new double[]{limit[0], limit[2]};
+    }
+
+    /**
+     * Extrapolates a sequence of complex partial sums to its limit. WYNN works
+     * in complex arithmetic, so partial sums whose real or imaginary parts
+     * stall for a term, as for rotating terms, are still accelerated.
+     *
+     * @param re real parts of the partial sums
+     * @param im imaginary parts of the partial sums
+     * @return {real part, imaginary part, error estimate} of the limit
+     */
+    public double[] extrapolate(double[] re, double[] im) {
+        int n = Math.min(window, re.length);
+        if (n == 0) {
+            return new double[]{0.0, 0.0, 0.0};
+        }
+        int last = re.length - 1;
+        if (n < 3) {
+            return new double[]{re[last], im[last], n == 2
+                    ? Math.hypot(re[last] - re[last - 1], im[last] - im[last - 1])
+                    : Double.POSITIVE_INFINITY};
+        }
+        int from = re.length - n;
+        return method == Method.WYNN ? wynn(re, im, from, n) : richardson(re, im, from, n);
+    }
+
+    /**
+     * Partial sums of the shell sums of a series
+     *
+     * @param shells shells[n] is the sum of the terms whose largest index is n
+     * @return the running sums of the shells
+     */
+    static double[] partialSums(double[] shells) {
+        double[] partial = new double[shells.length];
+        double s = 0.0;
+        for (int i = 0; i < shells.length; i++) {
+            s += shells[i];
+            partial[i] = s;
+        }
+        return partial;
+    }
+
+    /*
+     * Epsilon table built one column at a time, eps(k+1)[j] = eps(k-1)[j+1] +
+     * 1 / (eps(k)[j+1] - eps(k)[j]), with the partial sums as column 0. Only
+     * even columns estimate the limit. The table stops where a difference
+     * vanishes, since the column before it has then converged exactly.
+     */
+    private static double[] wynn(double[] re, double[] im, int from, int n) {
+        double[] previousRe = new double[n + 1]; //column k - 1
+        double[] previousIm = new double[n + 1];
+        double[] columnRe = Arrays.copyOfRange(re, from, from + n); //column k
+        double[] columnIm = Arrays.copyOfRange(im, from, from + n);
+        int length = n;
+        double[] best = {columnRe[n - 1], columnIm[n - 1], Math.hypot(
+                columnRe[n - 1] - columnRe[n - 2], columnIm[n - 1] - columnIm[n - 2])};
+        for (int k = 0; length > 1; k++) {
+            double[] nextRe = new double[length - 1];
+            double[] nextIm = new double[length - 1];
+            boolean finite = true;
+            for (int j = 0; j < length - 1; j++) {
+                double dr = columnRe[j + 1] - columnRe[j];
+                double di = columnIm[j + 1] - columnIm[j];
+                double d2 = dr * dr + di * di;
+                nextRe[j] = previousRe[j + 1] + dr / d2;
+                nextIm[j] = previousIm[j + 1] - di / d2;
+                finite &= d2 != 0.0 && Double.isFinite(nextRe[j]) && Double.isFinite(nextIm[j]);
+            }
+            if (!finite) {
+                break;
+            }
+            previousRe = columnRe;
+            previousIm = columnIm;
+            columnRe = nextRe;
+            columnIm = nextIm;
+            length--;
+            if ((k & 1) == 1 && length > 1) {
+                double r = columnRe[length - 1];
+                double i = columnIm[length - 1];
+                double e = Math.hypot(r - columnRe[length - 2], i - columnIm[length - 2])
+                        + (length > 2 ? Math.hypot(r - columnRe[length - 3],
+                                i - columnIm[length - 3]) : 0.0);
+                if (e < best[2]) {
+                    best = new double[]{r, i, e};
+                }
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Neville table of the polynomial in h = 1/(i + 1) through the partial
+     * sums, evaluated at h = 0. Order j extrapolates with j + 1 partial sums.
+     */
+    private static double[] richardson(double[] re, double[] im, int from, int n) {
+        double[][] tr = new double[n][];
+        double[][] ti = new double[n][];
+        for (int i = 0; i < n; i++) {
+            tr[i] = new double[i + 1];
+            ti[i] = new double[i + 1];
+            tr[i][0] = re[from + i];
+            ti[i][0] = im[from + i];
+            for (int j = 1; j <= i; j++) {
+                double ratio = (double) (from + i + 1) / (from + i - j + 1);
+                tr[i][j] = tr[i][j - 1] + (tr[i][j - 1] - tr[i - 1][j - 1]) / (ratio - 1.0);
+                ti[i][j] = ti[i][j - 1] + (ti[i][j - 1] - ti[i - 1][j - 1]) / (ratio - 1.0);
+            }
+        }
+        double[] best = {tr[n - 1][0], ti[n - 1][0],
+                Math.hypot(tr[n - 1][0] - tr[n - 2][0], ti[n - 1][0] - ti[n - 2][0])};
+        for (int j = 1; j < n - 1; j++) {
+            double r = tr[n - 1][j];
+            double i = ti[n - 1][j];
+            double e = Math.hypot(r - tr[n - 2][j], i - ti[n - 2][j])
+                    + (n - 3 >= j ? Math.hypot(r - tr[n - 3][j], i - ti[n - 3][j]) : 0.0);
+            if (e < best[2]) {
+                best = new double[]{r, i, e};
+            }
+        }
+        return best;
+    }
+}
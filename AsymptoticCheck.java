@@ -0,0 +1,93 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * Checks the Q factors on both sides of the Q_ab.ASYMPTOTIC truncation: the
+ * exact factors of a truncation just below it and the Stirling's series
+ * factors of one just above it agree with each other and with
+ * alpha^n e^(-alpha^2 / 2) / sqrt(n!) in BigDecimal arithmetic at every photon
+ * number, to the relative error of about 1e-12 that Q_ab.stirling states.
+ * The average photon number 400 keeps every factor of the tables well above
+ * the smallest double.
+ *
+ * @author forest
+ */
+public class AsymptoticCheck {
+
+    static final double TOLERANCE = 1e-12; //relative difference from the exact factor
+    static final int ALPHASQ = 400; //average photon number of both fields
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Stirling's series and exact Q factors agree to " + TOLERANCE);
+    }
+
+    static void run() {
+        int below = Q_ab.ASYMPTOTIC - 12;
+        int above = Q_ab.ASYMPTOTIC + 8;
+        double[] exact = factors(below, false);
+        double[] stirling = factors(above, true);
+        double[] reference = reference(above);
+        for (int n = 0; n < above; n++) {
+            if (n < below) {
+                compare("exact factor", n, exact[n], reference[n]);
+                compare("Stirling's series factor against the exact one", n, stirling[n],
+                        exact[n]);
+            }
+            compare("Stirling's series factor", n, stirling[n], reference[n]);
+        }
+    }
+
+    /*
+     * The Q factors of field 1 of a run truncated at max, checking which way
+     * they were calculated
+     */
+    private static double[] factors(int max, boolean asymptotic) {
+        double[] params = {50.0, 1.0, 1.0, ALPHASQ, ALPHASQ, 0.0, 1, 0.25, max};
+        Q_ab q = Q_ab.getInstance();
+        q.init(new EntropyParameters(params));
+        Checks.require(q.asymptotic == asymptotic, "Q factors of truncation " + max + " are "
+                + (asymptotic ? "exact" : "from Stirling's series"));
+        return Arrays.copyOf(q.factor1, max);
+    }
+
+    /*
+     * alpha^n e^(-alpha^2 / 2) / sqrt(n!) for n below max, with 40 digits
+     * until the exponential
+     */
+    private static double[] reference(int max) {
+        MathContext mc = new MathContext(40);
+        BigInteger power = BigInteger.ONE;
+        BigInteger factorial = BigInteger.ONE;
+        double[] reference = new double[max];
+        for (int n = 0; n < max; n++) {
+            if (n > 0) {
+                power = power.multiply(BigInteger.valueOf(ALPHASQ));
+                factorial = factorial.multiply(BigInteger.valueOf(n));
+            }
+            BigDecimal ratio = new BigDecimal(power).divide(new BigDecimal(factorial), mc);
+            reference[n] = ratio.sqrt(mc).doubleValue() * Math.exp(-ALPHASQ / 2.0);
+        }
+        return reference;
+    }
+
+    private static void compare(String name, int n, double value, double expected) {
+        Checks.require(Checks.relative(value, expected) <= TOLERANCE, name + " of " + n
+                + " photons is " + value + ", exactly " + expected);
+    }
+}
@@ -5,7 +5,9 @@
  */
 package nestedsums;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  *
@@ -15,6 +17,8 @@ public class BSingleton {
     static HashMap<Double,B_ab> cache = new HashMap<>();
     private static BSingleton instance;
     EntropyParameters params; //Experimental conditions
+    MatrixArena arena = MatrixArena.heap(); //storage of the B and F tables of
+                                            // the current run
 
     
     private BSingleton() {
@@ -33,17 +37,170 @@ public class BSingleton {
      */
     public void init (EntropyParameters ep) {
         if (this.params != ep){
+            init(ep, 0, ep.steps());
+        }
+    }
+
+    /**
+     * Populates the b coefficient cache for a range of time steps only, e.g.
+     * for one shard of a run. Tables of the same parameters already cached
+     * for the range are kept and tables outside the range are released. The
+     * missing tables are built in parallel.
+     * @param   ep
+     * @param   from    first time step, inclusive
+     * @param   to      last time step, exclusive
+     */
+    public void init(EntropyParameters ep, int from, int to) {
+        if (this.params != ep) {
+            release();
             this.params = ep;
+            int max = ep.max();
+            arena = MatrixArena.forRun((long) max * max, ep.storage);
             Q_ab.getInstance().init(ep);
-            System.out.println("Building B coefficient matrix ...");
-            for (int t = 0; t < ep.maxtime/ep.interval; t++) {
-                cache.put((double) t * ep.interval, new B_ab((double) t * ep.interval, params));
-                cache.get((double) t * ep.interval).calculate();
+        }
+        cache.entrySet().removeIf(entry -> {
+            double step = entry.getKey() / ep.interval;
+            boolean outside = step < from - 0.5 || step > to - 0.5;
+            if (outside) {
+                entry.getValue().release();
+            }
+            return outside;
+        });
+        System.out.println("Building B coefficient matrix ...");
+        List<Double> missing = new ArrayList<>();
+        for (int t = from; t < to; t++) {
+            if (!cache.containsKey((double) t * ep.interval)) {
+                missing.add((double) t * ep.interval);
             }
-            System.out.println("B coefficient matrix complete");
         }
+        //each build holds a C_0 table, so only as many as there are threads
+        B_ab[] built = new B_ab[missing.size()];
+        ExecutionService.getInstance().parallelFor(0, built.length, i -> {
+            built[i] = new B_ab(missing.get(i), params);
+            built[i].calculate();
+        });
+        for (B_ab b : built) {
+            cache.put(b.time, b);
+        }
+        System.out.println("B coefficient matrix complete, largest |B| - 1 is "
+                + normDeviation());
     }
     
+    /**
+     * Grows the truncation of the current run, e.g. when a run turns out to
+     * need more photon numbers. The Q table and every cached B table keep
+     * their terms and compute only the new border, so growing the truncation
+     * costs about as much as building the tables at the final size directly.
+     * The B tables are extended in parallel.
+     * @param   max     the new number of photon numbers per field
+     */
+    public void extend(int max) {
+        if (params == null || max <= params.max()) {
+            return;
+        }
+        params.truncation = max;
+        Q_ab.getInstance().extend(max);
+        System.out.println("Extending B coefficient matrix to " + max + " ...");
+        List<B_ab> tables = new ArrayList<>(cache.values());
+        ExecutionService.getInstance().parallelFor(0, tables.size(),
+                i -> tables.get(i).extend(max));
+        System.out.println("B coefficient matrix extended, largest |B| - 1 is "
+                + normDeviation());
+    }
+
+    /**
+     * The normalisation check of the B coefficients at a time, summed while
+     * the table was built. It should be 1.
+     * @param   time
+     * @return  the root of the sum of |B|^2, NaN if the time is not cached
+     */
+    public double getNorm(double time) {
+        B_ab b = cache.get(time);
+        return b == null ? Double.NaN : b.norm;
+    }
+
+    /**
+     * @return  the largest deviation of the B norm from 1 over every cached
+     *          time, 0 if nothing is cached
+     */
+    public double normDeviation() {
+        double deviation = 0.0;
+        for (B_ab b : cache.values()) {
+            deviation = Math.max(deviation, Math.abs(b.norm - 1.0));
+        }
+        return deviation;
+    }
+
+    /**
+     * Ends the current run: forgets the B tables and frees the off-heap
+     * storage of the run, including F tables not released yet.
+     */
+    public void release() {
+        cache.clear();
+        arena.close();
+        arena = MatrixArena.heap();
+        params = null;
+    }
+
+    /**
+     * @return the arena that stores the B and F tables of the current run
+     */
+    MatrixArena arena() {
+        return arena;
+    }
+
+    /**
+     * The sum over l of B(n,l) * conj(B(m,l)) at a time, computed from the
+     * cached B table by the loop kernels.
+     * @param   time
+     * @param   n       first index of the first B factor
+     * @param   m       first index of the conjugate B factor
+     * @param   from    first common index of the products
+     * @param   to      last common index of the products, exclusive
+     * @param   summation   accumulation of the products
+     * @return  the sum, or null if the B table for the time is not cached
+     */
+    Complex rowProduct(double time, int n, int m, int from, int to, Summation summation) {
+        B_ab b = cache.get(time);
+        return b == null ? null : b.rowProduct(n, m, from, to, summation);
+    }
+
+    /**
+     * The sum over k of B(k,n) * conj(B(k,m)) at a time, the column product
+     * of the cached B table that makes up the field b reduced state.
+     * @param   time
+     * @param   n       second index of the first B factor
+     * @param   m       second index of the conjugate B factor
+     * @param   from    first common index of the products
+     * @param   to      last common index of the products, exclusive
+     * @param   summation   accumulation of the products
+     * @return  the sum, or null if the B table for the time is not cached
+     */
+    Complex columnProduct(double time, int n, int m, int from, int to, Summation summation) {
+        B_ab b = cache.get(time);
+        return b == null ? null : b.columnProduct(n, m, from, to, summation);
+    }
+
+    /**
+     * N_0 of the cached B coefficients at a time, the normalisation their
+     * terms were divided by
+     * @param   time
+     * @return  N_0, NaN if the time is not cached
+     */
+    double normalisation(double time) {
+        B_ab b = cache.get(time);
+        return b == null ? Double.NaN : b.nt.calculate();
+    }
+
+    /**
+     * @param   time
+     * @return  the filled B table of a time, null if it is not cached
+     */
+    MemoizedSequence table(double time) {
+        B_ab b = cache.get(time);
+        return b == null || !b.filled || b.terms.re == null ? null : b.terms;
+    }
+
     /**
      * Returns B coefficient precisely if cached.
      * @param   time
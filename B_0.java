@@ -16,14 +16,17 @@ package nestedsums;
  * normalization, B_0 should always be 1 and provides a check for the accuracy
  * of the B_ab coefficient calculations
  *
+ * BSingleton sums the same check while it builds each B table, so for a time
+ * it has cached B_0 reads that norm instead of summing the table again.
+ *
  * @author forest
  */
-public class B_0 implements Sequence {
+public class B_0 implements DoubleSequence {
 
     double time; //time at which the state-reductive measurement is made
     int max; //the maximum number of terms in the series to calculate any value
     B_ab bt; //B_ab sequence for the time (see above) examined
-    double[][] terms; //the individual series terms, not the final value
+    MemoizedSequence terms; //the individual series terms, not the final value
     Double result; //the final value of the series
 
     /*
@@ -33,6 +36,7 @@ public class B_0 implements Sequence {
         this.time = time;
         this.max = max;
         this.bt = bt;
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, false);
     }
 
     /**
@@ -42,11 +46,17 @@ public class B_0 implements Sequence {
      */
     public B_0(double time, EntropyParameters ep) {
         this.time = time;
-        this.max = ep.alpha2sq * ep.alpha1sq;
-        if (this.max < 16) {
-            this.max = 16;
+        this.max = ep.max();
+        BSingleton bs = BSingleton.getInstance();
+        if (bs.params == ep && BSingleton.cache.containsKey(time)) {
+            //terms are not stored, as the sum is already known
+            this.bt = BSingleton.cache.get(time);
+            this.terms = new MemoizedSequence(this::calculateTerm, new int[]{0, 0}, false);
+            this.result = bs.getNorm(time);
+            return;
         }
         this.bt = new B_ab(time, ep);
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, false);
     }
 
     /**
@@ -57,25 +67,40 @@ public class B_0 implements Sequence {
         if (indices.length > 2) {
             throw new IndexOutOfBoundsException();
         }
-        //if the term is already calculated, fetch stored value
-        if (terms != null && terms[indices[0]][indices[1]] != 0.0) {
-            if (indices[1] < this.terms[0].length && indices[0] < this.terms.length) {
-                return terms[indices[0]][indices[1]];
-            }
+        return terms.getTerm(indices);
+    }
+
+    /**
+     * Memoized term without boxing
+     */
+    @Override
+    public double getDouble(int[] indices) throws IndexOutOfBoundsException {
+        if (indices.length > 2) {
+            throw new IndexOutOfBoundsException();
         }
-        //if the term is not already calculated, calculate it, conjugate squared
-        return bt.getTerm(indices).prod(bt.getTerm(indices).conj());
+        return terms.getDouble(indices);
+    }
+
+    /*
+     * Calculates a B_0 series term, the B coefficient conjugate squared
+     */
+    private Number calculateTerm(int[] indices) {
+        Complex b = bt.getTerm(indices);
+        return b.prod(b.conj());
     }
 
     /**
      * Calculates the B_0 factor for a preset time and preset maximum 
-     * number of sum terms. 
+     * number of sum terms. Each term is used once, so the term table is
+     * released with the result.
      * @return the value of B_0 for preset time
      */
     public double calculate() {
         if (result == null) {
             Series sum = new Series(this, max, 2);
-            return result = Math.sqrt(sum.calculate());
+            result = Math.sqrt(sum.calculate());
+            terms.release();
+            return result;
         } else {
             return result;
         }
@@ -35,7 +35,10 @@ public class B_ab implements Sequence {
     Q_ab qt; //QTilda sequence for system under examination
     C_0 ct; //C_0 sequence for the time (see above) examined
     N_0 nt; //N_0 sequence for the time (see above) examined
-    Complex[][] terms;
+    MemoizedSequence terms; //table of B values for the time examined
+    boolean filled; //whether every term of the table has been calculated
+    double norm = Double.NaN; //root of the sum of |B|^2 over the table, 1 when
+                              // the coefficients are normalised
 
     /*
      * Encapsulated B coefficient constructor
@@ -46,12 +49,12 @@ public class B_ab implements Sequence {
         this.time = time;
         this.qt = Q_ab.getInstance();
         qt.init(ep);
+        int max = ep.max();
         this.ct = new C_0(time, ep);
-        this.nt = new N_0(time, ep);
-        if (ep.alpha2sq * ep.alpha1sq < 16)
-            terms = new Complex[16][16];
-        else
-            terms = new Complex[ep.alpha2sq * ep.alpha1sq ][ep.alpha2sq * ep.alpha1sq ];
+        this.nt = new N_0(time, max, qt, ct); //shares the C0 table
+        //read concurrently by the F and Tr(ro_squared) sums
+        terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, true, true,
+                BSingleton.getInstance().arena());
     }
 
     /**
@@ -64,26 +67,125 @@ public class B_ab implements Sequence {
         if (indices.length > 2) {
             throw new IndexOutOfBoundsException();
         }
-        //if the term is already calculated, fetch stored value
-        if (terms != null && terms[indices[0]][indices[1]] != null) {
-            if (indices[1] < this.terms[0].length && indices[0] < this.terms.length) {
-                return terms[indices[0]][indices[1]];
-            }
-        }
-        //if the term is not already calculated, calculate it
+        return (Complex) terms.getTerm(indices);
+    }
+
+    /*
+     * Calculates a B term from the Q, C0 and N_0 coefficients
+     */
+    private Complex calculateTerm(int[] indices) {
         Complex coefficient = new Complex(1 / nt.calculate() 
                 * qt.getTerm(indices).doubleValue(), 0);
         return ct.getTerm(indices).prod(coefficient);
     }
 
     /*
-     * Calculates and populates the b coefficient table for assigned time
+     * Calculates and populates the b coefficient table for assigned time. The
+     * C0 table is only needed to build the B table, so it is released after.
+     * The rows are filled in parallel once N_0 is known. The norm is summed
+     * from the freshly filled table, which makes B_0 free.
      */
     void calculate() {
-        for (int i = 0; i < terms.length; i++) {
-            for (int j = 0; j < terms[i].length; j++) {
-                terms[i][j] = getTerm(new int[]{i, j});
-            }
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.B, time);
+        int[] shape = terms.shape();
+        ct.calculate(shape);
+        nt.calculate();
+        terms.parallelFill(new int[2], shape);
+        ct.terms.release();
+        filled = true;
+        norm = norm();
+        event.end((long) shape[0] * shape[1]);
+    }
+
+    /*
+     * Grows the table to a larger truncation. N_0 gains the border terms of
+     * |Q C0|^2, so the stored B terms are rescaled by the ratio of the old and
+     * new N_0, and only the C0 and B terms of the new border are calculated.
+     */
+    void extend(int max) {
+        int from = terms.shape()[0];
+        if (!filled || terms.re == null || max <= from) {
+            return;
         }
+        int[] shape = {max, max};
+        int[] right = {0, from}; //first cell of the new columns of the old rows
+        int[] below = {from, 0}; //first cell of the new rows
+        int[] corner = {from, max}; //end of the new columns of the old rows
+        ct.calculate(below, shape);
+        ct.calculate(right, corner);
+        double before = nt.calculate();
+        double after = nt.extend(max);
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.B, time);
+        filled = false;
+        terms.scale(before / after);
+        terms.extend(shape);
+        terms.parallelFill(below, shape);
+        terms.parallelFill(right, corner);
+        ct.terms.release();
+        filled = true;
+        norm = norm();
+        event.end((long) max * max - (long) from * from);
+    }
+
+    /*
+     * The root of the sum of |B|^2 over the filled table
+     */
+    private double norm() {
+        int[] shape = terms.shape();
+        return Math.sqrt(Kernels.getInstance().squaredModulus(terms.re, terms.im, 0,
+                shape[0] * shape[1], Summation.COMPENSATED));
+    }
+
+    /**
+     * The sum over l of B(n,l) * conj(B(m,l)) for from <= l < to, read
+     * straight from two rows of the filled table by the loop kernels.
+     *
+     * @param n first index of the first row
+     * @param m first index of the second row
+     * @param from first common index of the products
+     * @param to last common index of the products, exclusive
+     * @param summation accumulation of the products
+     * @return the sum, or null if the rows are not in the filled table
+     */
+    Complex rowProduct(int n, int m, int from, int to, Summation summation) {
+        MatrixStore re = terms.re;
+        MatrixStore im = terms.im;
+        int a = terms.offset(new int[]{n, from});
+        int b = terms.offset(new int[]{m, from});
+        if (!filled || re == null || a < 0 || b < 0 || to > terms.shape()[1]) {
+            return null;
+        }
+        return Kernels.getInstance().dotConj(re, im, a, b, to - from, summation);
+    }
+
+    /**
+     * The sum over k of B(k,n) * conj(B(k,m)) for from <= k < to, the field b
+     * counterpart of rowProduct. The columns are read in place from the
+     * filled table, a row length apart, so field b needs no copy of B.
+     *
+     * @param n second index of the first column
+     * @param m second index of the second column
+     * @param from first common index of the products
+     * @param to last common index of the products, exclusive
+     * @param summation accumulation of the products
+     * @return the sum, or null if the columns are not in the filled table
+     */
+    Complex columnProduct(int n, int m, int from, int to, Summation summation) {
+        MatrixStore re = terms.re;
+        MatrixStore im = terms.im;
+        int a = terms.offset(new int[]{from, n});
+        int b = terms.offset(new int[]{from, m});
+        int[] shape = terms.shape();
+        if (!filled || re == null || a < 0 || b < 0 || to > shape[0]) {
+            return null;
+        }
+        return Kernels.getInstance().dotConj(re, im, a, b, shape[1], to - from, summation);
+    }
+
+    /**
+     * Frees the table
+     */
+    void release() {
+        terms.release();
     }
 }
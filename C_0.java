@@ -28,7 +28,7 @@ public class C_0 implements Sequence {
 
     EntropyParameters params; //Experimental conditions
     double time; //time at which the state-reductive measurement is made
-    Complex[][] terms;
+    MemoizedSequence terms; //table of C0 values for the time examined
 
     /**
      * C_0 constructor 
@@ -38,6 +38,9 @@ public class C_0 implements Sequence {
     public C_0(double time, EntropyParameters params) {
         this.params = params;
         this.time = time;
+        int max = params.max();
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, true, true,
+                BSingleton.getInstance().arena());
     }
 
     /**
@@ -50,32 +53,39 @@ public class C_0 implements Sequence {
         if (indices.length > 2) {
             throw new IndexOutOfBoundsException();
         }
-        //if the term is already calculated, fetch stored value
-        if (terms != null && terms[indices[0]][indices[1]] != null) {
-            if (indices[1] < this.terms[0].length && indices[0] < this.terms.length) {
-                return terms[indices[0]][indices[1]];
-            }
-        }
-        //if the term is not already calculated, calculate it
+        return (Complex) terms.getTerm(indices);
+    }
+
+    /*
+     * Calculates a C0 term for the time examined
+     */
+    private Complex calculateTerm(int[] indices) {
+        return term(indices, ot(indices[0], indices[1]));
+    }
+
+    /*
+     * Calculates a C0 term given its Omega Tilda factor
+     */
+    private Complex term(int[] indices, double ot) {
         double realC;
         double imagC;
         //With non-zero detuning
         if(params.delta != 0.0){
             realC = oSquared2(indices[1]) / o2Squared(indices[0], indices[1])
                 + oSquared2(indices[0] - 1) / o2Squared(indices[0], indices[1])
-                * (Math.cos(time * ot(indices[0], indices[1]))*Math.sin((-1)*time*params.delta)
-                    + params.delta*(Math.sin(time * ot(indices[0], indices[1])))
-                     *(Math.cos(time*params.delta)*ot(indices[0], indices[1])));
+                * (Math.cos(time * ot)*Math.sin((-1)*time*params.delta)
+                    + params.delta*(Math.sin(time * ot))
+                     *(Math.cos(time*params.delta)*ot));
             imagC = oSquared2(indices[0] - 1) / o2Squared(indices[0], indices[1])
-                * (Math.cos(time * ot(indices[0], indices[1]))*Math.cos(time*params.delta)
-                   + params.delta*(Math.sin(time * ot(indices[0], indices[1])))
-                     *(Math.sin((-1)*params.delta)*ot(indices[0], indices[1])));
+                * (Math.cos(time * ot)*Math.cos(time*params.delta)
+                   + params.delta*(Math.sin(time * ot))
+                     *(Math.sin((-1)*params.delta)*ot));
         } 
         //with zero detuning -> avoid dividing by zero, because coefficient is 0
         else {
             realC = oSquared2(indices[1]) / o2Squared(indices[0], indices[1])
                     + oSquared2(indices[0] - 1) / o2Squared(indices[0], indices[1])
-                      * (Math.cos(time * ot(indices[0], indices[1])));
+                      * (Math.cos(time * ot));
             imagC = 0.0;
         }
         return new Complex(realC,imagC);
@@ -83,18 +93,45 @@ public class C_0 implements Sequence {
 
     /**
      * Fills in C0 terms table of a given size.
-     * This has linear efficiency for the number of terms to calculate.
+     * This has linear efficiency for the number of terms to calculate. The
+     * Omega Tilda factors of each row are evaluated together by the loop
+     * kernels.
      * @param   indices Coordinates of the last cell of the table/matrix that 
      *                  defines the range of terms to calculate. The first cell
      *                  is assumed to be {0,0}
      */
     public void calculate(int[] indices) {
-        terms = new Complex[indices[0]][indices[1]];
-        for (int i = 0; i < indices[0]; i++) {
-            for (int j = 0; j < indices[1]; j++) {
-                terms[i][j] = getTerm(new int[]{i, j});
+        calculate(new int[2], indices);
+    }
+
+    /**
+     * Fills in the C0 terms of a box of the table, e.g. the new border of a
+     * larger truncation, growing the table if the box does not fit. Terms
+     * already stored are kept.
+     * @param   from    the first cell of the box, inclusive
+     * @param   to      the last cell of the box, exclusive
+     */
+    public void calculate(int[] from, int[] to) {
+        //grow the table if the range does not fit
+        if (terms.offset(new int[]{to[0] - 1, to[1] - 1}) < 0) {
+            int[] shape = terms.shape();
+            terms.extend(new int[]{Math.max(shape[0], to[0]), Math.max(shape[1], to[1])});
+        }
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.C_0, time);
+        double[] ots = new double[to[1]];
+        for (int n = from[0]; n < to[0]; n++) {
+            //o2Squared(n, m) + (delta/2)^2 grows by oSquared2 steps along a row
+            Kernels.getInstance().sqrtRamp(o2Squared(n, 0) + Math.pow(params.delta / 2.0, 2),
+                    params.g23 * params.g23, ots, to[1]);
+            for (int m = from[1]; m < to[1]; m++) {
+                int[] cell = {n, m};
+                if (!terms.isComputed(cell)) {
+                    Complex c = term(cell, ots[m]);
+                    terms.put(cell, c.real(), c.imag());
+                }
             }
         }
+        event.end((long) (to[0] - from[0]) * (to[1] - from[1]));
     }
 
     /**
@@ -0,0 +1,194 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Durable record of the finished time steps of a linear entropy run, so that
+ * an interrupted run restarted with the same parameters skips the steps it
+ * has already calculated. The record is a properties file holding the
+ * parameters of the run and the linear entropy (of field b too, for BOTH)
+ * and the B norm of every finished step. It is saved at most every period
+ * and on close, to a temporary file that is synced to disk and then moved
+ * over the previous record at once, so a crash leaves either the old or the
+ * new record. A record of other parameters is ignored and replaced.
+ *
+ * Only results are recorded: the B tables of the unfinished steps are built
+ * again, which costs O(max^2) per step against the O(max^3) of the F sums of
+ * the steps that are skipped.
+ *
+ * @author forest
+ */
+public class Checkpoint implements AutoCloseable {
+
+    final Path file; //the record
+    final long period; //nanoseconds between saves
+    private final String run; //parameters of the run, to match a record
+    private final Properties values = new Properties(); //results by step
+    private long saved = System.nanoTime(); //time of the last save
+    private boolean changed; //whether results were recorded since the save
+
+    /**
+     * Checkpoint of a run in the file named by the nestedsums.checkpoint
+     * property, saved every nestedsums.checkpoint.period seconds (60)
+     * @param ep parameters of the run
+     * @throws IOException if an existing record cannot be read
+     */
+    public Checkpoint(EntropyParameters ep) throws IOException {
+        this(Paths.get(System.getProperty("nestedsums.checkpoint", "lentropy_nbar"
+                + ep.alpha1sq + "-" + ep.alpha2sq + ".checkpoint")), ep,
+                Long.getLong("nestedsums.checkpoint.period", 60) * 1_000_000_000L);
+    }
+
+    /**
+     * Checkpoint of a run, resuming the record in the file if it is of the
+     * same parameters
+     * @param file the record
+     * @param ep parameters of the run
+     * @param period nanoseconds between saves
+     * @throws IOException if an existing record cannot be read
+     */
+    public Checkpoint(Path file, EntropyParameters ep, long period) throws IOException {
+        this.file = file;
+        this.period = period;
+        this.run = Arrays.stream(ep.toArray()).mapToObj(Double::toString)
+                .collect(Collectors.joining(",")) + "," + ep.storage + "," + ep.summation
+                + "," + ep.fields;
+        if (Files.exists(file)) {
+            Properties p = ShardCoordinator.read(file);
+            if (run.equals(p.getProperty("run"))) {
+                values.putAll(p);
+                System.out.println("Resuming " + done() + " finished time steps from " + file);
+            } else {
+                System.out.println("Checkpoint " + file + " is of another run, starting afresh");
+            }
+        }
+        values.setProperty("run", run);
+    }
+
+    /**
+     * @param step time step
+     * @return true if the step is recorded
+     */
+    public boolean isDone(int step) {
+        return values.containsKey("entropy." + step);
+    }
+
+    /**
+     * @return the number of recorded time steps
+     */
+    public int done() {
+        return (int) values.keySet().stream()
+                .filter(k -> ((String) k).startsWith("entropy.")).count();
+    }
+
+    /**
+     * @param step a recorded time step
+     * @return the linear entropy of the field of the run, of field a for BOTH
+     */
+    public double entropy(int step) {
+        return Double.parseDouble(values.getProperty("entropy." + step));
+    }
+
+    /**
+     * @param step a recorded time step
+     * @return the linear entropy of field b of a BOTH run, NaN otherwise
+     */
+    public double entropyB(int step) {
+        return Double.parseDouble(values.getProperty("entropyB." + step, "NaN"));
+    }
+
+    /**
+     * @param step a recorded time step
+     * @return the B norm of the step
+     */
+    public double norm(int step) {
+        return Double.parseDouble(values.getProperty("norm." + step, "NaN"));
+    }
+
+    /**
+     * Records a finished time step, and saves the record if the period has
+     * passed since the last save. Safe to call from many threads.
+     * @param step time step
+     * @param entropy linear entropy of the field of the run, field a for BOTH
+     * @param entropyB linear entropy of field b for BOTH, otherwise ignored
+     * @param norm the B norm of the step
+     * @throws UncheckedIOException if the record cannot be saved
+     */
+    public synchronized void record(int step, double entropy, double entropyB, double norm) {
+        values.setProperty("norm." + step, Double.toString(norm));
+        if (!Double.isNaN(entropyB)) {
+            values.setProperty("entropyB." + step, Double.toString(entropyB));
+        }
+        //the entropy marks the step done, so it is recorded last
+        values.setProperty("entropy." + step, Double.toString(entropy));
+        changed = true;
+        if (System.nanoTime() - saved >= period) {
+            try {
+                save();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Saves the record if it has changed, durably and atomically
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile());
+                Writer w = new OutputStreamWriter(out, StandardCharsets.ISO_8859_1)) {
+            values.store(w, null);
+            w.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        saved = System.nanoTime();
+        changed = false;
+    }
+
+    /**
+     * Deletes the record, once the results of the run are safely written
+     * @throws IOException if the record cannot be deleted
+     */
+    public synchronized void delete() throws IOException {
+        Files.deleteIfExists(file);
+        changed = false;
+    }
+
+    /**
+     * Saves the record
+     */
+    @Override
+    public void close() throws IOException {
+        save();
+    }
+}
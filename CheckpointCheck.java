@@ -0,0 +1,94 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks resuming a run from its Checkpoint: a small run of both fields is
+ * calculated in full, then a record of two of its time steps, one in each
+ * chunk, is saved and a restarted run calculates only the other steps,
+ * reporting the recorded values for the skipped ones and the full run's
+ * values for the rest. A record of the same file opened for other parameters
+ * is ignored.
+ *
+ * @author forest
+ */
+public class CheckpointCheck {
+
+    static final int CHUNK = 2; //time steps whose B tables are built at once
+    static final int[] RECORDED = {0, 2}; //steps in the record of the restart
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Restarted runs skip the recorded steps and reproduce the full run");
+    }
+
+    static void run() {
+        double[] params = {50.0, 1.0, 1.0, 4.0, 4.0, 0.0, 1, 0.25};
+        EntropyParameters ep = new EntropyParameters(params, Precision.DOUBLE, Summation.PLAIN,
+                FieldMode.BOTH);
+        int steps = ep.steps();
+        Path file = null;
+        try {
+            file = Files.createTempFile("nestedsums", ".checkpoint");
+            Files.delete(file);
+            Checkpoint full = new Checkpoint(file, ep, Long.MAX_VALUE);
+            Checks.require(NestedSums.calculate(ep, CHUNK, full) == steps,
+                    "a fresh run skipped time steps");
+            full.delete();
+
+            Checkpoint first = new Checkpoint(file, ep, Long.MAX_VALUE);
+            for (int t : RECORDED) {
+                first.record(t, full.entropy(t), full.entropyB(t), full.norm(t));
+            }
+            first.close();
+            Checkpoint restarted = new Checkpoint(file, ep, Long.MAX_VALUE);
+            Checks.require(restarted.done() == RECORDED.length, "the restart found "
+                    + restarted.done() + " recorded steps, not " + RECORDED.length);
+            int calculated = NestedSums.calculate(ep, CHUNK, restarted);
+            Checks.require(calculated == steps - RECORDED.length, "the restart calculated "
+                    + calculated + " of " + steps + " steps with " + RECORDED.length
+                    + " recorded");
+            for (int t = 0; t < steps; t++) {
+                Checks.require(restarted.entropy(t) == full.entropy(t)
+                        && restarted.entropyB(t) == full.entropyB(t)
+                        && restarted.norm(t) == full.norm(t), "step " + t + " of the restart is "
+                        + restarted.entropy(t) + ", " + restarted.entropyB(t) + ", "
+                        + restarted.norm(t) + ", of the full run " + full.entropy(t) + ", "
+                        + full.entropyB(t) + ", " + full.norm(t));
+            }
+            restarted.close();
+
+            EntropyParameters other = new EntropyParameters(params, Precision.DOUBLE,
+                    Summation.PLAIN, FieldMode.A);
+            Checkpoint another = new Checkpoint(file, other, Long.MAX_VALUE);
+            Checks.require(another.done() == 0, "a record of field a and b was resumed for"
+                    + " field a alone");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            BSingleton.getInstance().release();
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                    Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+                } catch (IOException e) {
+                    //a temporary file is left behind
+                }
+            }
+        }
+    }
+}
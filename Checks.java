@@ -0,0 +1,86 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Self checks of the numerical building blocks, for builds without a test
+ * framework. Every check compares a fast path with a slow reference (exact
+ * arithmetic, a direct run, a known spectrum) and throws an AssertionError
+ * when they differ by more than its stated tolerance. main runs them all,
+ * prints one line per check and exits with status 1 if any failed.
+ *
+ * Usage: Checks [name ...], with the names of the checks to run, all if none
+ *
+ * @author forest
+ */
+public class Checks {
+
+    //every check by name, in the order they run
+    static final Map<String, Runnable> CHECKS = new LinkedHashMap<>();
+    static {
+        CHECKS.put("DoubleDouble", DoubleDoubleCheck::run);
+        CHECKS.put("Lanczos", LanczosCheck::run);
+        CHECKS.put("Extension", ExtensionCheck::run);
+        CHECKS.put("Factorial", FactorialCheck::run);
+        CHECKS.put("Series", SeriesCheck::run);
+        CHECKS.put("Kernels", KernelsCheck::run);
+        CHECKS.put("Expression", ExpressionCheck::run);
+        CHECKS.put("Checkpoint", CheckpointCheck::run);
+        CHECKS.put("Asymptotic", AsymptoticCheck::run);
+    }
+
+    public static void main(String[] args) {
+        int failed = 0;
+        for (Map.Entry<String, Runnable> check : CHECKS.entrySet()) {
+            if (args.length > 0 && !Arrays.asList(args).contains(check.getKey())) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                check.getValue().run();
+                System.out.printf("%-16s OK %8.1f ms%n", check.getKey(),
+                        (System.nanoTime() - start) / 1e6);
+            } catch (AssertionError | RuntimeException e) {
+                failed++;
+                System.out.printf("%-16s FAILED %s%n", check.getKey(), e);
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param condition what the check expects
+     * @param message the failure, with the values found
+     */
+    static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * @param value the value found
+     * @param reference the expected value
+     * @return |value - reference| / |reference|, or the absolute difference
+     *         for a zero reference
+     */
+    static double relative(double value, double reference) {
+        double error = Math.abs(value - reference);
+        return reference == 0.0 ? error : error / Math.abs(reference);
+    }
+}
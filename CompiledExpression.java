@@ -0,0 +1,27 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * A closed Expression ready to evaluate, either as a generated loop nest or
+ * by the interpreter (see ExpressionCompiler). An instance may be evaluated
+ * by one thread at a time.
+ *
+ * @author forest
+ */
+public interface CompiledExpression {
+
+    /**
+     * @return the value of the expression
+     */
+    public Complex evaluate();
+}
@@ -11,6 +11,8 @@
  */
 package nestedsums;
 
+import java.util.Arrays;
+
 /**
  * Defines a complex series, which can also be a series term, supporting nested
  * summation and complex values. This is fundamentally different from 
@@ -25,9 +27,27 @@ public class ComplexSeries implements Sequence {
     private Sequence seriesterm; //the definition for a term of the series
     private int max; //max number of terms to sum
     private int depth; //number of inner sums nested within this sum
-    private int[] indices; //indices to track nested terms under evaluation, in 
-                           // reverse order, meaning index of outermost sum is 
-                           // last and index of innermost sum is first
+    private Symmetry symmetry = Symmetry.NONE; //symmetry of the terms in their
+                                               // summation indices
+    private Convergence convergence; //rule to stop sums early, null to always
+                                     // sum max terms
+    private Summation summation = Summation.PLAIN; //accumulation of every sum
+    private Acceleration acceleration; //extrapolation of the partial sums, null
+                                       // for the sum of max terms
+    private IndexBounds bounds; //ranges that depend on the outer indices, null
+                                // for the hypercube of max terms per sum
+    private DoubleDoubleComplex extended; //result of the last double-double calculation
+    private int[] termsUsed; //largest number of terms used in each dimension
+    private long evaluations; //number of terms evaluated by the last calculation
+    private double error; //error estimate of the last accelerated calculation
+    private double[][] shells; //real and imaginary sums over the hypercube
+                               // shells of the last accelerated calculation
+    private boolean resumable; //whether the last calculation summed the whole
+                               // box of terms, so it can be extended
+    private int[] indices; //indices of the terms, in reverse order, meaning 
+                           // index of outermost sum is last and index of 
+                           // innermost sum is first. Indices beyond depth are
+                           // fixed outer indices
     Complex value; //Complex result value for the series
 
     /**
@@ -57,6 +77,80 @@ public class ComplexSeries implements Sequence {
         this.value = new Complex(0.0,0.0);
     }
 
+    /**
+     * Constructor for series calculation with one or more nested inner series
+     * whose terms are symmetric in their indices, so that only the terms with
+     * ordered indices are evaluated
+     *
+     * @param terms the series term definition, to generate series member values
+     * @param max the maximum index permitted at the current depth
+     * @param depth
+     * @param symmetry the symmetry of the terms, HERMITIAN only for depth 2
+     */
+    public ComplexSeries(Sequence terms, int max, int depth, Symmetry symmetry) {
+        this(terms, max, depth);
+        if (symmetry == Symmetry.HERMITIAN && depth != 2) {
+            throw new IllegalArgumentException("Hermitian terms need exactly two indices");
+        }
+        this.symmetry = symmetry;
+    }
+
+    /**
+     * Constructor for series calculation with a choice of accumulation, such 
+     * as compensated sums for long or ill-conditioned series
+     *
+     * @param terms the series term definition, to generate series member values
+     * @param max the maximum index permitted at the current depth
+     * @param depth
+     * @param summation the accumulation of every sum
+     */
+    public ComplexSeries(Sequence terms, int max, int depth, Summation summation) {
+        this(terms, max, depth);
+        this.summation = summation;
+    }
+
+    /**
+     * Constructor for series calculation whose sums stop as soon as the rest 
+     * of their terms is provably within tolerance
+     *
+     * @param terms the series term definition, to generate series member values
+     * @param max the maximum index permitted at the current depth
+     * @param depth
+     * @param convergence the tolerance and tail hint of every sum
+     */
+    public ComplexSeries(Sequence terms, int max, int depth, Convergence convergence) {
+        this(terms, max, depth);
+        this.convergence = convergence;
+    }
+
+    /**
+     * Constructor for series calculation over a region whose ranges depend on
+     * the outer indices, such as a triangle or a simplex, visiting only the
+     * terms inside it
+     *
+     * @param terms the series term definition, to generate series member values
+     * @param depth
+     * @param bounds the range of every sum
+     */
+    public ComplexSeries(Sequence terms, int depth, IndexBounds bounds) {
+        this(terms, 0, depth);
+        this.bounds = bounds;
+    }
+
+    /**
+     * Constructor for series calculation extrapolated from the partial sums
+     * of growing truncations, for slowly converging series
+     *
+     * @param terms the series term definition, to generate series member values
+     * @param max the maximum index permitted at the current depth
+     * @param depth
+     * @param acceleration the extrapolation of the partial sums
+     */
+    public ComplexSeries(Sequence terms, int max, int depth, Acceleration acceleration) {
+        this(terms, max, depth);
+        this.acceleration = acceleration;
+    }
+
     /**
      * Constructor for series calculation with one or more nested inner series
      *
@@ -88,24 +182,157 @@ public class ComplexSeries implements Sequence {
 
     /**
      * Calculates the series total. The efficiency of this solution is
-     * O(n^depth), so is not as efficient as ConcurrentSeries.
+     * O(n^depth), so is not as efficient as ConcurrentSeries. The nested sums
+     * are evaluated iteratively on a private copy of the indices and the 
+     * real and imaginary parts are accumulated as doubles, so the series may 
+     * be calculated again or concurrently. Symmetric terms are evaluated once 
+     * per set of ordered indices, bounded sums visit only the terms inside
+     * their bounds, and the sum of a SeparableSequence is the product of the
+     * sums of its factors, which may be real or Complex. Accelerated series
+     * are extrapolated from their complex partial sums over hypercube shells.
      *
      * @return the value of the series
      */
     public Complex calculate() {
-        for (int i = 0; i < max; i++) {
-            //set index for the next term at current depth
-            this.indices[this.depth - 1] = i;
-            //if this is an outer series, calculate the inner series value
-            //for all inner values and add to the current value
-            if (depth != 1) {
-                ComplexSeries inner = new ComplexSeries(seriesterm, max, depth - 1, indices);
-                value = value.add(inner.calculate());
-            } // when the innermost sum is reached, sum the terms from 1 to max
-            else {
-                value = value.add((Complex)seriesterm.getTerm(indices));
+        resumable = false;
+        shells = null;
+        if (bounds != null) {
+            value = NestedLoop.sumComplex(seriesterm, indices.clone(), depth, bounds);
+            return value;
+        }
+        if (acceleration != null) {
+            shells = NestedLoop.shellsComplex(seriesterm, indices.clone(), depth, 0, max);
+            return accelerate();
+        }
+        if (convergence != null) {
+            termsUsed = new int[depth];
+            long[] count = new long[1];
+            value = NestedLoop.convergeComplex(seriesterm, indices.clone(), depth, max,
+                    convergence, termsUsed, count);
+            evaluations = count[0];
+            return value;
+        }
+        if (seriesterm instanceof SeparableSequence && symmetry == Symmetry.NONE
+                && ((SeparableSequence) seriesterm).depth() == depth) {
+            value = factorised((SeparableSequence) seriesterm);
+            return value;
+        }
+        if (summation == Summation.DOUBLE_DOUBLE) {
+            extended = NestedLoop.doubleDoubleComplex(seriesterm, indices.clone(), depth, max);
+            value = extended.toComplex();
+            return value;
+        }
+        if (summation == Summation.COMPENSATED) {
+            value = NestedLoop.compensatedComplex(seriesterm, indices.clone(), depth, max);
+            return value;
+        }
+        value = NestedLoop.sumComplex(seriesterm, indices.clone(), depth, max, symmetry);
+        resumable = symmetry == Symmetry.NONE;
+        return value;
+    }
+
+    /**
+     * Extends the series to more terms in every sum. When the last calculation
+     * summed the whole box of terms with plain summation, or was accelerated,
+     * only the terms of the new border are evaluated and added to it. Any
+     * other series is calculated again.
+     *
+     * @param max the new number of terms in every sum, no smaller than before
+     * @return the value of the extended series
+     */
+    public Complex extend(int max) {
+        if (max < this.max) {
+            throw new IllegalArgumentException("Series only grow: " + this.max + " to " + max);
+        }
+        int from = this.max;
+        this.max = max;
+        if (!resumable && shells == null) {
+            return calculate();
+        }
+        double[][] border = NestedLoop.shellsComplex(seriesterm, indices.clone(), depth, from, max);
+        if (shells != null) {
+            for (int part = 0; part < 2; part++) {
+                shells[part] = Arrays.copyOf(shells[part], max);
+                System.arraycopy(border[part], 0, shells[part], from, border[part].length);
             }
+            return accelerate();
+        }
+        double re = value.real();
+        double im = value.imag();
+        for (int i = 0; i < border[0].length; i++) {
+            re += border[0][i];
+            im += border[1][i];
         }
+        value = new Complex(re, im);
         return value;
     }
+
+    /*
+     * Extrapolates the complex partial sums of the shells
+     */
+    private Complex accelerate() {
+        double[] limit = acceleration.extrapolate(Acceleration.partialSums(shells[0]),
+                Acceleration.partialSums(shells[1]));
+        error = limit[2];
+        value = new Complex(limit[0], limit[1]);
+        return value;
+    }
+
+    /*
+     * The product of the sums of the factors, each with the same summation.
+     * Real factors are summed as Complex terms with no imaginary part.
+     */
+    private Complex factorised(SeparableSequence separable) {
+        Complex product = new Complex(1.0, 0.0);
+        DoubleDoubleComplex extendedProduct = DoubleDoubleComplex.valueOf(product);
+        for (int k = 0; k < separable.factors(); k++) {
+            Sequence f = separable.factor(k);
+            Sequence terms = f instanceof SeparableSequence ? f : i -> {
+                Number t = f.getTerm(i);
+                return t instanceof Complex ? t : new Complex(t.doubleValue(), 0.0);
+            };
+            ComplexSeries factor = new ComplexSeries(terms, max, separable.width(k), summation);
+            product = product.prod(factor.calculate());
+            if (summation == Summation.DOUBLE_DOUBLE) {
+                extendedProduct = extendedProduct.prod(factor.getExtendedValue());
+            }
+        }
+        if (summation == Summation.DOUBLE_DOUBLE) {
+            extended = extendedProduct;
+            return extended.toComplex();
+        }
+        return product;
+    }
+
+    /**
+     * @return the result of the last calculation with DOUBLE_DOUBLE summation,
+     *         to about 32 decimal digits, or null
+     */
+    public DoubleDoubleComplex getExtendedValue() {
+        return extended;
+    }
+
+    /**
+     * @return the largest number of terms used in each dimension by the last 
+     *         calculation with a convergence rule, innermost first, or null
+     */
+    public int[] getTermsUsed() {
+        return termsUsed == null ? null : termsUsed.clone();
+    }
+
+    /**
+     * @return the number of terms evaluated by the last calculation with a 
+     *         convergence rule
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return the error estimate of the last calculation with an 
+     *         acceleration, 0 otherwise
+     */
+    public double getErrorEstimate() {
+        return error;
+    }
 }
@@ -18,46 +18,141 @@ import java.util.concurrent.RecursiveAction;
  * Defines a generic series, which can also be a series term, supporting nested
  * summation.
  *
+ * The sum is divided and conquered on the outermost index: a task whose range
+ * holds more than THRESHOLD terms splits the outermost range in two and sums
+ * the halves in parallel, and smaller tasks sum their box iteratively with
+ * NestedLoop. Symmetric terms split only the outermost range of the ordered
+ * indices, so each task visits its share of the fundamental domain. Sums with
+ * IndexBounds split the outermost range where it halves the number of terms
+ * inside the bounds, so triangular and banded sums stay balanced.
+ *
  * @author forest
  */
 public class ConcurrentSeries extends RecursiveAction implements Sequence {
 
+    static final int THRESHOLD = 1 << 12; //most terms summed by one task
+
     private final Sequence terms; //the definition for a term of the series
     private final int dimensions; //number of indices
     private final int[] indices; //Two sets of indices indicating the first and  
-                                 //last cells of a series of terms to sum
+                                 //last (exclusive) cells of a series of terms 
+                                 //to sum, the outermost index last in each set
+    private final Symmetry symmetry; //symmetry of the terms in their indices
+    private final IndexBounds bounds; //ranges that depend on the outer indices,
+                                      // null for the box of indices
     double value; //Result value for the series
 
     /**
      * Constructor for nested series calculation
      *
      * @param terms the series term definition, to generate series member values
-     * @param indices   outer indices
+     * @param indices   first cell indices followed by last cell indices
      */
     public ConcurrentSeries(Sequence terms, int[] indices) {
+        this(terms, indices, Symmetry.NONE);
+    }
+
+    /**
+     * Constructor for nested series calculation with symmetric terms. Every
+     * dimension must cover the same range of indices.
+     *
+     * @param terms the series term definition, to generate series member values
+     * @param indices   first cell indices followed by last cell indices
+     * @param symmetry  the symmetry of the term values
+     */
+    public ConcurrentSeries(Sequence terms, int[] indices, Symmetry symmetry) {
+        this(terms, indices, symmetry, null);
+    }
+
+    /**
+     * Constructor for nested series calculation over a region whose ranges
+     * depend on the outer indices, visiting only the terms inside it
+     *
+     * @param terms the series term definition, to generate series member values
+     * @param depth number of nested sums
+     * @param bounds    the range of every sum
+     */
+    public ConcurrentSeries(Sequence terms, int depth, IndexBounds bounds) {
+        this(terms, outermost(depth, bounds), Symmetry.NONE, bounds);
+    }
+
+    private ConcurrentSeries(Sequence terms, int[] indices, Symmetry symmetry,
+            IndexBounds bounds) {
         this.terms = terms;
         this.dimensions = indices.length >> 1;
         this.indices = indices;
+        this.symmetry = symmetry;
+        this.bounds = bounds;
+        if (symmetry == Symmetry.HERMITIAN && dimensions != 2) {
+            throw new IllegalArgumentException("Hermitian terms need exactly two indices");
+        }
     }
 
     @Override
     protected void compute() {
-        for(int i = 0; i < dimensions ; i++){
-            // If this index level is the same for start and finish indices,
-            // move down to the next inner index
-            if (indices[i] == indices[dimensions+i])
-                continue;
-            // split on innermost non-matching indices
-            int[] indices1 = indices;
-            int[] indices2 = indices;
-            indices1[dimensions + i] = indices[(dimensions +i) >> 1];
-            indices2[i] = indices[(dimensions +i) >> 1+1];
-            invokeAll(new ConcurrentSeries(terms, indices1),
-                      new ConcurrentSeries(terms, indices2));
+        int outer = dimensions - 1;
+        int first = indices[outer];
+        int last = indices[dimensions + outer];
+        long volume = 1;
+        int middle = (first + last) >>> 1;
+        if (bounds == null) {
+            for (int i = 0; i < dimensions; i++) {
+                volume *= Math.max(0, indices[dimensions + i] - indices[i]);
+            }
+        } else {
+            long[] volumes = NestedLoop.volumes(new int[dimensions], dimensions, bounds,
+                    first, last);
+            volume = 0;
+            for (long v : volumes) {
+                volume += v;
+            }
+            //the first outer value after half of the terms
+            long half = 0;
+            middle = first;
+            while (middle < last - 1 && 2 * (half + volumes[middle - first]) <= volume) {
+                half += volumes[middle++ - first];
+            }
+            middle = Math.max(middle, first + 1);
+        }
+        TaskEvent event = new TaskEvent();
+        event.begin();
+        if (last - first > 1 && volume > THRESHOLD) {
+            // split on the outermost index, whose range does not depend on
+            // the inner ones for box, symmetric or bounded sums
+            int[] indices1 = indices.clone();
+            int[] indices2 = indices.clone();
+            indices1[dimensions + outer] = middle;
+            indices2[outer] = middle;
+            ConcurrentSeries lower = new ConcurrentSeries(terms, indices1, symmetry, bounds);
+            ConcurrentSeries upper = new ConcurrentSeries(terms, indices2, symmetry, bounds);
+            invokeAll(lower, upper);
+            value = lower.value + upper.value;
+            event.split = true;
+        } else if (bounds != null) {
+            value = NestedLoop.sum(terms, new int[dimensions], dimensions, bounds, first, last);
+        } else {
+            value = NestedLoop.sum(terms, new int[dimensions], dimensions,
+                    Arrays.copyOfRange(indices, 0, dimensions),
+                    Arrays.copyOfRange(indices, dimensions, indices.length), symmetry);
+        }
+        if (event.shouldCommit()) {
+            event.size = volume;
+            event.range = last - first;
+            event.commit();
         }
-        value += getTerm(Arrays.copyOfRange(indices,0,dimensions)).doubleValue();
     }
     
+    /*
+     * Box indices holding the range of the outermost bounded sum
+     */
+    private static int[] outermost(int depth, IndexBounds bounds) {
+        int[] indices = new int[depth << 1];
+        int[] outer = new int[depth];
+        indices[depth - 1] = bounds.lower(outer, depth - 1);
+        indices[(depth << 1) - 1] = bounds.upper(outer, depth - 1);
+        return indices;
+    }
+
     /**
      * @param indices   Index numbers of the term in the series. The number of
      *                  indices indicates the level of summation nesting.
@@ -66,7 +161,7 @@ public class ConcurrentSeries extends RecursiveAction implements Sequence {
     @Override
     public Number getTerm(int[] indices) throws IndexOutOfBoundsException {
         //check that number of indices is less than depth
-        if (indices.length > dimensions << 2) {
+        if (indices.length > dimensions) {
             throw new IndexOutOfBoundsException();
         }
         return terms.getTerm(indices);
@@ -0,0 +1,111 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Stopping rule for series whose terms become negligible before the maximum
+ * index, such as Poisson weighted sums. Each sum of a nested series stops as
+ * soon as an upper bound on the magnitude of its remaining terms is within the
+ * tolerance, max(absolute, relative * |partial sum|).
+ *
+ * The bound comes from a hint about the tail of every sum:
+ *  MONOTONE: once the term magnitudes start to fall they keep falling, with
+ *            ratios that never grow (true for Poisson and other log-concave
+ *            weights). After a term t with ratio r = |t| / |previous| < 1 the
+ *            tail is at most |t| r / (1 - r).
+ *  BOUNDED:  a TailBound supplied by the caller bounds the tail directly.
+ *
+ * The absolute tolerance applies to every individual sum. For non-negative
+ * terms the relative error of a nested series of depth d is at most d times
+ * the relative tolerance.
+ *
+ * @author forest
+ */
+public class Convergence {
+
+    /**
+     * Kinds of knowledge about the tail of a sum
+     */
+    public enum Tail {
+        MONOTONE, BOUNDED
+    }
+
+    /**
+     * Upper bound on the magnitude of the terms of a sum after a given index
+     */
+    public interface TailBound {
+
+        /**
+         * @param indices current indices, indices[dimension] is the index of
+         *                the last term included in the sum
+         * @param dimension the summation index being bounded
+         * @param last magnitude of the last term included
+         * @return an upper bound on the sum of the magnitudes of the remaining
+         *         terms of this sum
+         */
+        public double tail(int[] indices, int dimension, double last);
+    }
+
+    final double absolute; //absolute tolerance of every sum
+    final double relative; //tolerance relative to the partial sum
+    final Tail tail; //what is known about the tail
+    final TailBound bound; //the tail bound for BOUNDED tails
+
+    /**
+     * Convergence for sums with monotone tails
+     *
+     * @param absolute absolute tolerance of every sum
+     * @param relative tolerance relative to the magnitude of the partial sum
+     */
+    public Convergence(double absolute, double relative) {
+        this.absolute = absolute;
+        this.relative = relative;
+        this.tail = Tail.MONOTONE;
+        this.bound = null;
+    }
+
+    /**
+     * Convergence for sums with a known bound on their tails
+     *
+     * @param absolute absolute tolerance of every sum
+     * @param relative tolerance relative to the magnitude of the partial sum
+     * @param bound upper bound on the remaining terms of a sum
+     */
+    public Convergence(double absolute, double relative, TailBound bound) {
+        this.absolute = absolute;
+        this.relative = relative;
+        this.tail = Tail.BOUNDED;
+        this.bound = bound;
+    }
+
+    /**
+     * @param indices current indices, indices[dimension] is the last included
+     * @param dimension the summation index being tested
+     * @param previous magnitude of the term before the last, NaN if none
+     * @param last magnitude of the last term included
+     * @param sum magnitude of the partial sum, including the last term
+     * @return true if the rest of the sum is provably within tolerance
+     */
+    boolean converged(int[] indices, int dimension, double previous, double last, double sum) {
+        double remaining;
+        if (tail == Tail.BOUNDED) {
+            remaining = bound.tail(indices, dimension, last);
+        } else {
+            double ratio = last / previous;
+            if (!(ratio < 1.0)) {
+                return false; //still rising, or no previous term
+            }
+            remaining = last * ratio / (1.0 - ratio);
+        }
+        return remaining <= Math.max(absolute, relative * sum);
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * DoubleDouble implements real numbers as the unevaluated sum of two doubles,
+ * hi + lo with |lo| <= ulp(hi) / 2, which carries about 106 bits (32 decimal
+ * digits) of precision with the range of a double. The arithmetic uses the
+ * error-free transformations of Knuth (two-sum) and Dekker (two-product, here
+ * with Math.fma), so it costs roughly 10 to 20 double operations per
+ * operation instead of the thousands of a BigDecimal with MathContext(1000).
+ *
+ * Instances are immutable. Results are accurate to a few units in the last
+ * place of the double-double, not correctly rounded.
+ *
+ * @author forest
+ */
+public final class DoubleDouble extends Number implements Comparable<DoubleDouble> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final DoubleDouble ZERO = new DoubleDouble(0.0, 0.0);
+    public static final DoubleDouble ONE = new DoubleDouble(1.0, 0.0);
+
+    private final double hi; //leading part, the value rounded to double
+    private final double lo; //trailing part, the rounding error of hi
+
+    private DoubleDouble(double hi, double lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    /**
+     * @param x a double, which is represented exactly
+     * @return x as a double-double
+     */
+    public static DoubleDouble valueOf(double x) {
+        return new DoubleDouble(x, 0.0);
+    }
+
+    /**
+     * @param x a decimal, rounded to about 32 significant digits
+     * @return the double-double nearest to x
+     */
+    public static DoubleDouble valueOf(BigDecimal x) {
+        double hi = x.doubleValue();
+        if (Double.isInfinite(hi)) {
+            return new DoubleDouble(hi, 0.0);
+        }
+        double lo = x.subtract(new BigDecimal(hi)).doubleValue();
+        return normalize(hi, lo);
+    }
+
+    /**
+     * The exact sum of two doubles
+     *
+     * @param a first addend
+     * @param b second addend
+     * @return a + b without rounding
+     */
+    public static DoubleDouble sum(double a, double b) {
+        double s = a + b;
+        return new DoubleDouble(s, twoSumError(a, b, s));
+    }
+
+    /**
+     * The exact product of two doubles
+     *
+     * @param a first factor
+     * @param b second factor
+     * @return a * b without rounding
+     */
+    public static DoubleDouble product(double a, double b) {
+        double p = a * b;
+        return new DoubleDouble(p, Math.fma(a, b, -p));
+    }
+
+    /**
+     * @return the leading part, the value rounded to double
+     */
+    public double hi() {
+        return hi;
+    }
+
+    /**
+     * @return the trailing part
+     */
+    public double lo() {
+        return lo;
+    }
+
+    /**
+     * @param w the number to add
+     * @return this + w
+     */
+    public DoubleDouble add(DoubleDouble w) {
+        double s = hi + w.hi;
+        double e = twoSumError(hi, w.hi, s);
+        double t = lo + w.lo;
+        double f = twoSumError(lo, w.lo, t);
+        e += t;
+        double h = s + e;
+        e -= h - s;
+        e += f;
+        return normalize(h, e);
+    }
+
+    /**
+     * @param w the number to add
+     * @return this + w
+     */
+    public DoubleDouble add(double w) {
+        double s = hi + w;
+        double e = twoSumError(hi, w, s) + lo;
+        return normalize(s, e);
+    }
+
+    /**
+     * @param w the number to subtract
+     * @return this - w
+     */
+    public DoubleDouble sub(DoubleDouble w) {
+        return add(w.negate());
+    }
+
+    /**
+     * @param w the number to multiply by
+     * @return this * w
+     */
+    public DoubleDouble mul(DoubleDouble w) {
+        double p = hi * w.hi;
+        double e = Math.fma(hi, w.hi, -p);
+        e += hi * w.lo + lo * w.hi;
+        return normalize(p, e);
+    }
+
+    /**
+     * @param w the number to multiply by
+     * @return this * w
+     */
+    public DoubleDouble mul(double w) {
+        double p = hi * w;
+        double e = Math.fma(hi, w, -p) + lo * w;
+        return normalize(p, e);
+    }
+
+    /**
+     * Long division with three double quotient digits
+     *
+     * @param w the divisor
+     * @return this / w
+     */
+    public DoubleDouble div(DoubleDouble w) {
+        double q1 = hi / w.hi;
+        DoubleDouble r = sub(w.mul(q1));
+        double q2 = r.hi / w.hi;
+        r = r.sub(w.mul(q2));
+        double q3 = r.hi / w.hi;
+        return normalize(q1, q2).add(q3);
+    }
+
+    /**
+     * Square root by one Newton step from the double square root
+     *
+     * @return sqrt(this), NaN if this is negative
+     */
+    public DoubleDouble sqrt() {
+        if (hi <= 0.0) {
+            return hi == 0.0 ? ZERO : new DoubleDouble(Double.NaN, 0.0);
+        }
+        double x = Math.sqrt(hi);
+        DoubleDouble residual = sub(product(x, x));
+        return sum(x, residual.hi / (2.0 * x));
+    }
+
+    /**
+     * @return -this
+     */
+    public DoubleDouble negate() {
+        return new DoubleDouble(-hi, -lo);
+    }
+
+    /**
+     * @return |this|
+     */
+    public DoubleDouble abs() {
+        return hi < 0.0 || hi == 0.0 && lo < 0.0 ? negate() : this;
+    }
+
+    /**
+     * @return the exact value as a BigDecimal
+     */
+    public BigDecimal toBigDecimal() {
+        return new BigDecimal(hi).add(new BigDecimal(lo));
+    }
+
+    @Override
+    public int compareTo(DoubleDouble w) {
+        int c = Double.compare(hi, w.hi);
+        return c != 0 ? c : Double.compare(lo, w.lo);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DoubleDouble && compareTo((DoubleDouble) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(hi) * 31 + Double.hashCode(lo);
+    }
+
+    @Override
+    public int intValue() {
+        return (int) doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+        return (long) doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return hi + lo;
+    }
+
+    /**
+     * @return the value to 32 significant digits
+     */
+    @Override
+    public String toString() {
+        if (Double.isNaN(hi) || Double.isInfinite(hi)) {
+            return Double.toString(hi);
+        }
+        return toBigDecimal().round(new MathContext(32)).toString();
+    }
+
+    /*
+     * Rounding error of s = a + b, for any a and b (Knuth's two-sum)
+     */
+    static double twoSumError(double a, double b, double s) {
+        double bb = s - a;
+        return (a - (s - bb)) + (b - bb);
+    }
+
+    /*
+     * hi + lo renormalized so that lo is within half an ulp of hi
+     */
+    private static DoubleDouble normalize(double hi, double lo) {
+        double s = hi + lo;
+        if (Double.isInfinite(s) || Double.isNaN(s)) {
+            return new DoubleDouble(s, 0.0);
+        }
+        return new DoubleDouble(s, lo - (s - hi));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+/**
+ * Checks DoubleDouble and DoubleDoubleComplex against BigDecimal arithmetic
+ * to 60 digits on random operands of mixed signs and magnitudes. Each real
+ * result must agree to TOLERANCE relative to the largest operand (sums and
+ * differences, where cancellation is exact) or to the result (products,
+ * quotients, roots); complex products and moduli are compared relative to
+ * the modulus of the exact result.
+ *
+ * @author forest
+ */
+public class DoubleDoubleCheck {
+
+    static final double TOLERANCE = 1e-31; //about 2^-103, a few ulps of 106 bits
+    static final int OPERANDS = 2000; //random operand pairs tried
+    static final MathContext mc = new MathContext(60);
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("DoubleDouble agrees with BigDecimal to " + TOLERANCE);
+    }
+
+    static void run() {
+        Random random = new Random(35);
+        for (int i = 0; i < OPERANDS; i++) {
+            BigDecimal a = operand(random);
+            BigDecimal b = operand(random);
+            DoubleDouble x = DoubleDouble.valueOf(a);
+            DoubleDouble y = DoubleDouble.valueOf(b);
+            //the operands as represented, so only the arithmetic is checked
+            a = x.toBigDecimal();
+            b = y.toBigDecimal();
+            BigDecimal scale = a.abs().max(b.abs());
+            check("add", x.add(y), a.add(b), scale);
+            check("sub", x.sub(y), a.subtract(b), scale);
+            check("mul", x.mul(y), a.multiply(b, mc), null);
+            check("div", x.div(y), a.divide(b, mc), null);
+            check("sqrt", x.abs().sqrt(), a.abs().sqrt(mc), null);
+            double d = b.doubleValue();
+            check("add double", x.add(d), a.add(new BigDecimal(d)),
+                    a.abs().max(new BigDecimal(d).abs()));
+            check("mul double", x.mul(d), a.multiply(new BigDecimal(d), mc), null);
+
+            BigDecimal c = operand(random);
+            BigDecimal e = operand(random);
+            DoubleDoubleComplex z = new DoubleDoubleComplex(x, y);
+            DoubleDoubleComplex w = new DoubleDoubleComplex(DoubleDouble.valueOf(c),
+                    DoubleDouble.valueOf(e));
+            c = w.real().toBigDecimal();
+            e = w.imag().toBigDecimal();
+            BigDecimal re = a.multiply(c, mc).subtract(b.multiply(e, mc), mc);
+            BigDecimal im = a.multiply(e, mc).add(b.multiply(c, mc), mc);
+            BigDecimal norm = a.multiply(a, mc).add(b.multiply(b, mc), mc);
+            BigDecimal modulus = norm.multiply(c.multiply(c, mc).add(e.multiply(e, mc), mc), mc).sqrt(mc);
+            DoubleDoubleComplex p = z.prod(w);
+            check("complex prod re", p.real(), re, modulus);
+            check("complex prod im", p.imag(), im, modulus);
+            check("complex norm", z.norm(), norm, null);
+            check("complex mod", z.mod(), norm.sqrt(mc), null);
+        }
+    }
+
+    /*
+     * A random decimal of 40 significant digits, either sign, with an
+     * exponent from -30 to 30
+     */
+    private static BigDecimal operand(Random random) {
+        StringBuilder digits = new StringBuilder(random.nextBoolean() ? "-" : "");
+        digits.append(1 + random.nextInt(9));
+        for (int k = 1; k < 40; k++) {
+            digits.append(random.nextInt(10));
+        }
+        return new BigDecimal(digits + "E" + (random.nextInt(61) - 30 - 39));
+    }
+
+    /*
+     * Requires value to equal exact within TOLERANCE of scale, or of exact
+     * when scale is null
+     */
+    private static void check(String operation, DoubleDouble value, BigDecimal exact, BigDecimal scale) {
+        BigDecimal reference = scale == null ? exact.abs() : scale;
+        double error = value.toBigDecimal().subtract(exact).abs()
+                .divide(reference, MathContext.DECIMAL64).doubleValue();
+        Checks.require(error <= TOLERANCE, operation + " is out by " + error
+                + " relative: " + value + " against " + exact.round(mc));
+    }
+}
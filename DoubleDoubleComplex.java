@@ -0,0 +1,150 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * DoubleDoubleComplex implements complex numbers with double-double real and
+ * imaginary parts, for complex sums and products that need about 32 decimal
+ * digits. Like Complex, its Number value is the modulus.
+ *
+ * Instances are immutable.
+ *
+ * @author forest
+ */
+public final class DoubleDoubleComplex extends Number {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final DoubleDoubleComplex ZERO =
+            new DoubleDoubleComplex(DoubleDouble.ZERO, DoubleDouble.ZERO);
+
+    private final DoubleDouble x, y; //real and imaginary parts
+
+    /**
+     * Constructs the complex number z = u + i*v
+     *
+     * @param u Real part
+     * @param v Imaginary part
+     */
+    public DoubleDoubleComplex(DoubleDouble u, DoubleDouble v) {
+        x = u;
+        y = v;
+    }
+
+    /**
+     * @param z a Complex number, which is represented exactly
+     * @return z as a double-double complex number
+     */
+    public static DoubleDoubleComplex valueOf(Complex z) {
+        return new DoubleDoubleComplex(DoubleDouble.valueOf(z.real()),
+                DoubleDouble.valueOf(z.imag()));
+    }
+
+    /**
+     * @return Re[z] where z is this number
+     */
+    public DoubleDouble real() {
+        return x;
+    }
+
+    /**
+     * @return Im[z] where z is this number
+     */
+    public DoubleDouble imag() {
+        return y;
+    }
+
+    /**
+     * @param w is the number to add
+     * @return z+w where z is this number
+     */
+    public DoubleDoubleComplex add(DoubleDoubleComplex w) {
+        return new DoubleDoubleComplex(x.add(w.x), y.add(w.y));
+    }
+
+    /**
+     * @param w is the number to add
+     * @return z+w where z is this number
+     */
+    public DoubleDoubleComplex add(Complex w) {
+        return new DoubleDoubleComplex(x.add(w.real()), y.add(w.imag()));
+    }
+
+    /**
+     * @param w is the number to subtract
+     * @return z-w where z is this number
+     */
+    public DoubleDoubleComplex dif(DoubleDoubleComplex w) {
+        return new DoubleDoubleComplex(x.sub(w.x), y.sub(w.y));
+    }
+
+    /**
+     * @param w is the number to multiply by
+     * @return z*w where z is this number
+     */
+    public DoubleDoubleComplex prod(DoubleDoubleComplex w) {
+        return new DoubleDoubleComplex(x.mul(w.x).sub(y.mul(w.y)), x.mul(w.y).add(y.mul(w.x)));
+    }
+
+    /**
+     * @return z-bar where z is this number
+     */
+    public DoubleDoubleComplex conj() {
+        return new DoubleDoubleComplex(x, y.negate());
+    }
+
+    /**
+     * @return |z|^2 where z is this number
+     */
+    public DoubleDouble norm() {
+        return x.mul(x).add(y.mul(y));
+    }
+
+    /**
+     * @return |z| where z is this number
+     */
+    public DoubleDouble mod() {
+        return norm().sqrt();
+    }
+
+    /**
+     * @return this number rounded to a Complex
+     */
+    public Complex toComplex() {
+        return new Complex(x.doubleValue(), y.doubleValue());
+    }
+
+    @Override
+    public int intValue() {
+        return (int) doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+        return Math.round(doubleValue());
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return mod().doubleValue();
+    }
+
+    @Override
+    public String toString() {
+        return x + (y.hi() < 0.0 ? " - " + y.negate() : " + " + y) + "i";
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * A sequence of real terms that can be read without boxing. The series
+ * classes sum a DoubleSequence through getDouble, so a term costs no
+ * allocation.
+ *
+ * @author forest
+ */
+public interface DoubleSequence extends Sequence {
+
+    /**
+     * @param indices Index numbers of a term in the sequence
+     * @return the value of the sequence term
+     */
+    public double getDouble(int[] indices) throws IndexOutOfBoundsException;
+
+    /**
+     * @param indices Index numbers of a term in the sequence
+     * @return the value of the sequence term, boxed
+     */
+    @Override
+    public default Number getTerm(int[] indices) throws IndexOutOfBoundsException {
+        return getDouble(indices);
+    }
+}
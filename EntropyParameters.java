@@ -28,6 +28,11 @@ package nestedsums;
  *                 states 0 and 2 are possible, and only 0 is considered because
  *                 symmetry suggests that field resonant with any transition 
  *                 jump can have the identical statistics as any other field
+ *  storage: precision of the stored B, C_0 and F tables
+ *  summation: accumulation of the F terms and of Tr(ro squared)
+ *  fields: the field modes whose linear entropy a run calculates
+ *  truncation: the number of photon numbers summed per field, 0 for
+ *              alpha1sq * alpha2sq (at least 16)
  * 
  * @author forest
  */
@@ -46,12 +51,17 @@ public class EntropyParameters{
     int detectedstate; //the detected state of the atom
     int maxtime = 10; //range of time for calculations
     double interval= 0.1; //time interval of calculations
+    Precision storage = Precision.DOUBLE; //precision of the coefficient tables
+    Summation summation = Summation.PLAIN; //accumulation of the F and trace sums
+    FieldMode fields = FieldMode.A; //field modes examined by a run
+    int truncation = 0; //photon numbers summed per field, 0 for the default
     
     /**
      * Entropy parameters for a two-mode coherent light cavity interacting with 
      * a resonant gamma configuration Rydberg atom
      * @param   SharedParams    Entropy field parameters: {delta, g12, g23, 
-     *                          alpha1sq, alpha2sq, detectedstate} 
+     *                          alpha1sq, alpha2sq, detectedstate, maxtime,
+     *                          interval} and optionally the truncation
      */
     public EntropyParameters(double[] SharedParams){
         this.delta = SharedParams[0]/2.0;
@@ -64,5 +74,59 @@ public class EntropyParameters{
         this.detectedstate = (int)SharedParams[5];
         this.maxtime = (int)SharedParams[6];
         this.interval = SharedParams[7];
+        if (SharedParams.length > 8) {
+            this.truncation = (int) SharedParams[8];
+        }
+    }
+
+    /**
+     * Entropy parameters with a precision policy for the coefficient tables
+     * @param   SharedParams    Entropy field parameters, as above
+     * @param   storage         precision of the stored B, C_0 and F tables
+     * @param   summation       accumulation of the F terms and Tr(ro_squared)
+     */
+    public EntropyParameters(double[] SharedParams, Precision storage, Summation summation){
+        this(SharedParams);
+        this.storage = storage;
+        this.summation = summation;
+    }
+
+    /**
+     * Entropy parameters with a precision policy and the field modes of a run
+     * @param   SharedParams    Entropy field parameters, as above
+     * @param   storage         precision of the stored B, C_0 and F tables
+     * @param   summation       accumulation of the F terms and Tr(ro_squared)
+     * @param   fields          A, B or BOTH field modes
+     */
+    public EntropyParameters(double[] SharedParams, Precision storage, Summation summation,
+            FieldMode fields){
+        this(SharedParams, storage, summation);
+        this.fields = fields;
+    }
+
+    /**
+     * The parameters in the order the array constructor takes them, so an
+     * identical set can be built elsewhere, e.g. in another process
+     * @return  {delta, g12, g23, alpha1sq, alpha2sq, detectedstate, maxtime,
+     *          interval, truncation}
+     */
+    public double[] toArray() {
+        return new double[]{delta * 2.0, g12, g23, alpha1sq, alpha2sq, detectedstate,
+            maxtime, interval, truncation};
+    }
+
+    /**
+     * @return  the number of photon numbers summed per field, the truncation
+     *          if one is set and alpha1sq * alpha2sq (at least 16) otherwise
+     */
+    public int max() {
+        return truncation > 0 ? truncation : Math.max(16, alpha1sq * alpha2sq);
+    }
+
+    /**
+     * @return  the number of time steps in a run, maxtime / interval rounded up
+     */
+    public int steps() {
+        return (int) Math.ceil(maxtime / interval);
     }
 }
@@ -0,0 +1,387 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Pre-flight plan of a linear entropy run: estimates the heap and off-heap
+ * footprint and the floating point work of a parameter set from the
+ * truncation, the time steps, the fields and the storage precision, and picks
+ * the cheapest strategy that fits the memory of this JVM and machine, so an
+ * infeasible run fails before any table is allocated instead of running out of
+ * memory part way through BSingleton.init:
+ *  IN_MEMORY: every B table is cached on the heap.
+ *  STREAMING: the time steps are run in chunks, and only the B tables of one
+ *             chunk are cached on the heap at once. Every B table is used by
+ *             its own time step only, so nothing is computed twice.
+ *  OFF_HEAP:  every B table is cached, with the B, C_0 and F tables in native
+ *             memory and only Q, N_0 and Tr(ro squared) on the heap.
+ *  SHARDED:   the time steps are run in chunks by ShardWorker JVMs with heaps
+ *             sized for one chunk, when the machine has the memory but this
+ *             JVM's heap does not. Field a only, as the workers compute.
+ * The nestedsums.strategy property forces a strategy. An explicit
+ * nestedsums.offheap (true or false rather than auto) is kept: false rules
+ * out OFF_HEAP, and true puts the tables of any strategy off the heap, so
+ * the plan is OFF_HEAP, or STREAMING with chunks that fit both budgets. A
+ * plan may use three quarters of the free heap and of the free physical
+ * memory.
+ *
+ * The footprint counts the stored values and computed bitmaps of the tables
+ * and the exact factorials, where Q needs them. The work counts the C_0, N_0,
+ * B, F and Tr(ro squared) terms at a few operations each, not the one-off
+ * exact roots of Q, and the predicted time assumes a billion operations a
+ * second per thread.
+ * start and finish measure the peak heap, peak off-heap and elapsed time of
+ * the run to report them against the prediction.
+ *
+ * @author forest
+ */
+public class ExecutionPlan {
+
+    /**
+     * Execution strategies, cheapest first
+     */
+    public enum Strategy {
+        IN_MEMORY, STREAMING, OFF_HEAP, SHARDED
+    }
+
+    static final double HEADROOM = 0.75; //share of the free memory a plan uses
+    static final double OPERATIONS = 1e9; //operations per second per thread
+
+    final EntropyParameters ep; //parameters of the run
+    final int max; //photon numbers per field
+    final int steps; //time steps of the run
+    final int threads; //parallelism of the run
+    final long fixedHeap; //Q table and factorials, on the heap in any strategy
+    final long stepTables; //B table cached per time step
+    final long buildHeap; //N_0 terms per B build in flight, on the heap
+    final long buildTables; //C_0 table per B build in flight
+    final long sumHeap; //Tr(ro squared) terms per time step summed, on the heap
+    final long sumTables; //F table per time step summed
+    final long operations; //floating point work of the whole run
+    Strategy strategy; //the strategy chosen
+    int chunk; //time steps whose B tables are cached at once
+    int workers; //worker JVMs of a sharded run
+    long heap; //predicted peak heap of this JVM, or of every worker
+    long offHeap; //predicted peak off-heap bytes
+    Boolean requested; //nestedsums.offheap as set by the user, null for auto
+    boolean tablesOffHeap; //whether the B, C_0 and F tables are off the heap
+    private long started; //System.nanoTime at start
+    private boolean applied; //whether apply has set nestedsums.offheap
+    private String previous; //nestedsums.offheap before apply set it
+
+    /**
+     * Plans a run for the memory of this JVM and machine and the parallelism
+     * of the ExecutionService
+     * @param ep parameters of the run
+     */
+    public ExecutionPlan(EntropyParameters ep) {
+        this(ep, ExecutionService.getInstance().parallelism(), freeHeap(), freePhysical(),
+                MatrixArena.OFF_HEAP);
+    }
+
+    /**
+     * Plans a run for given resources
+     * @param ep parameters of the run
+     * @param threads parallelism of the run
+     * @param heapBudget free heap bytes
+     * @param physicalBudget free physical memory bytes
+     * @param nativeMemory whether tables can be stored off the heap
+     * @throws IllegalStateException if no strategy fits
+     */
+    public ExecutionPlan(EntropyParameters ep, int threads, long heapBudget, long physicalBudget,
+            boolean nativeMemory) {
+        this.ep = ep;
+        this.max = ep.max();
+        this.steps = ep.steps();
+        this.threads = Math.max(1, threads);
+        long size = (long) max * max;
+        int bytes = ep.storage.bytes;
+        int fields = ep.fields == FieldMode.BOTH ? 2 : 1;
+        fixedHeap = table(size, false, Double.BYTES)
+                + (Q_ab.asymptotic(max) ? 0 : factorials(max));
+        stepTables = table(size, true, bytes);
+        buildHeap = table(size, false, Double.BYTES);
+        buildTables = table(size, true, bytes);
+        sumHeap = table(size, false, Double.BYTES);
+        sumTables = table(size, true, bytes);
+        operations = steps * (40L * size + fields * (4L * size * max + 4L * size));
+        choose((long) (heapBudget * HEADROOM), (long) (physicalBudget * HEADROOM), nativeMemory);
+    }
+
+    /*
+     * Picks the first strategy that fits, unless the properties force one
+     */
+    private void choose(long heapBudget, long physicalBudget, boolean nativeMemory) {
+        String forced = System.getProperty("nestedsums.strategy");
+        String offheap = System.getProperty("nestedsums.offheap", "auto");
+        requested = "auto".equals(offheap) ? null : Boolean.valueOf(offheap);
+        if (Boolean.TRUE.equals(requested) && !nativeMemory) {
+            throw new IllegalArgumentException("nestedsums.offheap is true but off-heap"
+                    + " storage is not available, it needs JDK 17 and jdk.incubator.foreign");
+        }
+        int inFlight = Math.min(threads, steps);
+        if (forced != null) {
+            strategy = Strategy.valueOf(forced.toUpperCase());
+            if (strategy == Strategy.SHARDED && ep.fields != FieldMode.A) {
+                throw new IllegalArgumentException("Sharded runs examine field a only");
+            }
+            if (strategy == Strategy.OFF_HEAP && Boolean.FALSE.equals(requested)) {
+                throw new IllegalArgumentException("The OFF_HEAP strategy conflicts with"
+                        + " nestedsums.offheap=false");
+            }
+        } else if (Boolean.TRUE.equals(requested)) {
+            if (heap(steps, true) <= heapBudget && offHeap(steps) <= physicalBudget) {
+                strategy = Strategy.OFF_HEAP;
+            } else if (chunk(heapBudget, physicalBudget, true) >= 1) {
+                strategy = Strategy.STREAMING;
+            } else {
+                throw noFit(heapBudget, physicalBudget);
+            }
+        } else if (heap(steps, false) <= heapBudget) {
+            strategy = Strategy.IN_MEMORY;
+        } else if (chunk(heapBudget, physicalBudget, false) >= inFlight) {
+            strategy = Strategy.STREAMING;
+        } else if (requested == null && nativeMemory && heap(steps, true) <= heapBudget
+                && offHeap(steps) <= physicalBudget) {
+            strategy = Strategy.OFF_HEAP;
+        } else if (chunk(heapBudget, physicalBudget, false) >= 1) {
+            strategy = Strategy.STREAMING;
+        } else if (ep.fields == FieldMode.A && heap(1, false) <= physicalBudget) {
+            strategy = Strategy.SHARDED;
+        } else {
+            throw noFit(heapBudget, physicalBudget);
+        }
+        tablesOffHeap = requested != null ? requested : strategy == Strategy.OFF_HEAP;
+        switch (strategy) {
+            case IN_MEMORY:
+            case OFF_HEAP:
+                chunk = steps;
+                break;
+            case STREAMING:
+                chunk = Math.max(1, Math.min(steps,
+                        chunk(heapBudget, physicalBudget, tablesOffHeap)));
+                break;
+            default:
+                //as many workers as the memory and threads allow, each with a
+                // few chunks of steps to balance the load
+                workers = (int) Math.max(1, Math.min(threads,
+                        physicalBudget / Math.max(1, heap(inFlight, false))));
+                chunk = Math.max(1, Math.min(inFlight, steps / (4 * workers)));
+                tablesOffHeap = false;
+        }
+        heap = heap(chunk, tablesOffHeap);
+        offHeap = tablesOffHeap ? offHeap(chunk) : 0;
+    }
+
+    /*
+     * The failure of a run that fits no strategy, with the needs of one step
+     */
+    private IllegalStateException noFit(long heapBudget, long physicalBudget) {
+        boolean offHeap = Boolean.TRUE.equals(requested);
+        return new IllegalStateException(String.format("No strategy fits: one time step"
+                + " needs %.1f MB of heap%s, %.1f MB of heap and %.1f MB of memory are free",
+                mb(heap(1, offHeap)), offHeap ? String.format(" and %.1f MB off-heap",
+                mb(offHeap(1))) : "", mb(heapBudget), mb(physicalBudget)));
+    }
+
+    /*
+     * Predicted peak heap with chunk B tables cached, every table on the heap
+     * unless the arena tables are off-heap
+     */
+    private long heap(int chunk, boolean tablesOffHeap) {
+        int builds = Math.min(threads, chunk);
+        int sums = Math.min(threads, steps);
+        long heap = fixedHeap + builds * buildHeap + sums * sumHeap;
+        return tablesOffHeap ? heap : heap + tables(chunk);
+    }
+
+    /*
+     * Predicted peak off-heap bytes with chunk B tables cached off the heap
+     */
+    private long offHeap(int chunk) {
+        return tables(chunk);
+    }
+
+    /*
+     * The B, C_0 and F tables held at once with chunk B tables cached
+     */
+    private long tables(int chunk) {
+        return chunk * stepTables + Math.min(threads, chunk) * buildTables
+                + Math.min(threads, steps) * sumTables;
+    }
+
+    /*
+     * The most time steps whose B tables fit the budgets, 0 if none
+     */
+    private int chunk(long heapBudget, long physicalBudget, boolean tablesOffHeap) {
+        int low = 0;
+        int high = steps;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (heap(middle, tablesOffHeap) <= heapBudget
+                    && (!tablesOffHeap || offHeap(middle) <= physicalBudget)) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sets the storage of the tables for the strategy, through the
+     * nestedsums.offheap property read by BSingleton.init, unless the user
+     * set the property, which the plan has followed. finish restores it.
+     */
+    public void apply() {
+        if (requested == null && !applied) {
+            previous = System.getProperty("nestedsums.offheap");
+            System.setProperty("nestedsums.offheap", Boolean.toString(tablesOffHeap));
+            applied = true;
+        }
+    }
+
+    /**
+     * Starts measuring the resources of the run
+     */
+    public void start() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        started = System.nanoTime();
+    }
+
+    /**
+     * Compares the measured resources of the run with the prediction, and
+     * restores the nestedsums.offheap property apply set
+     * @param arena the arena of the run's tables, read before it is released
+     * @return predicted and actual peak heap, off-heap bytes and time
+     */
+    public String finish(MatrixArena arena) {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        if (applied) {
+            if (previous == null) {
+                System.clearProperty("nestedsums.offheap");
+            } else {
+                System.setProperty("nestedsums.offheap", previous);
+            }
+            applied = false;
+        }
+        return String.format("%s predicted %.1f MB heap, %.1f MB off-heap, %.1f s;"
+                + " actual %.1f MB heap, %.1f MB off-heap, %.1f s", strategy, mb(heap),
+                mb(offHeap), seconds(), mb(peakHeap), mb(arena.peakBytes()), seconds);
+    }
+
+    /**
+     * @return the predicted time of the run, in seconds
+     */
+    public double seconds() {
+        return operations / (OPERATIONS * threads);
+    }
+
+    /**
+     * @return the strategy chosen
+     */
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the time steps whose B tables are cached at once, the steps of
+     *         a shard for SHARDED
+     */
+    public int chunk() {
+        return chunk;
+    }
+
+    /**
+     * @return the number of worker JVMs of a sharded run
+     */
+    public int workers() {
+        return workers;
+    }
+
+    /**
+     * @return the heap every worker JVM of a sharded run needs, in bytes
+     */
+    public long workerHeap() {
+        return strategy == Strategy.SHARDED ? heap : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s plan: max %d, %d steps of %d cached at once%s, %.2e operations"
+                + " (%.1f s on %d threads), %.1f MB heap, %.1f MB off-heap%s", strategy, max,
+                steps, chunk, strategy == Strategy.SHARDED ? " in " + workers + " workers" : "",
+                (double) operations, seconds(), threads, mb(heap), mb(offHeap),
+                requested == null ? "" : " (nestedsums.offheap=" + requested + ")");
+    }
+
+    /*
+     * Bytes of a table of values with its computed bitmap
+     */
+    private static long table(long size, boolean complex, int bytes) {
+        return size * (complex ? 2 : 1) * bytes + size / 8;
+    }
+
+    /*
+     * Bytes of the exact factorial checkpoints to max, from the bits of
+     * log2(n!) at every FactorialSingleton.STRIDE and at max itself
+     */
+    private static long factorials(int max) {
+        long bytes = 0;
+        double log2 = 0.0;
+        for (int n = 1; n <= max; n++) {
+            log2 += Math.log(n) / Math.log(2.0);
+            if (n % FactorialSingleton.STRIDE == 0 || n == max) {
+                bytes += (long) (log2 / 8) + 48;
+            }
+        }
+        return bytes;
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (double) (1 << 20);
+    }
+
+    /*
+     * Heap the JVM may still allocate
+     */
+    private static long freeHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /*
+     * Free physical memory of the machine, 0 if it cannot be read
+     */
+    private static long freePhysical() {
+        try {
+            return ManagementFactory.getPlatformMXBean(
+                    com.sun.management.OperatingSystemMXBean.class).getFreeMemorySize();
+        } catch (RuntimeException | LinkageError e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The threads shared by every parallel path of the package: ConcurrentSeries
+ * sums, parallel fills of the Q, B and F tables and time sweeps. Compute work
+ * runs in one fork-join pool, either the JVM common pool or a dedicated pool
+ * of the configured parallelism, so its workers stay warm from one time step
+ * to the next. Blocking I/O stages get their own executor, of virtual threads
+ * when the JVM has them and daemon platform threads otherwise.
+ *
+ * The configuration is read from system properties when the class loads:
+ *  nestedsums.parallelism  compute threads (default: available processors);
+ *                          1 runs every parallel path in the calling thread
+ *  nestedsums.pool         dedicated (default) or common; the common pool
+ *                          keeps its own parallelism
+ *  nestedsums.io           virtual (default) or platform
+ * configure() changes it later. shutdown() stops the threads; they are
+ * started again on the next use.
+ *
+ * @author forest
+ */
+public class ExecutionService {
+
+    /**
+     * The fork-join pools compute work can run in
+     */
+    public enum Pool {
+        COMMON, DEDICATED
+    }
+
+    private static final ExecutionService instance = new ExecutionService(
+            Integer.getInteger("nestedsums.parallelism", Runtime.getRuntime().availableProcessors()),
+            Pool.valueOf(System.getProperty("nestedsums.pool", "dedicated").toUpperCase()),
+            !"platform".equalsIgnoreCase(System.getProperty("nestedsums.io", "virtual")));
+
+    private int parallelism; //compute threads
+    private Pool kind; //common or dedicated compute pool
+    private boolean virtual; //virtual threads for I/O, when available
+    private ForkJoinPool pool; //the dedicated pool, created on first use
+    private ExecutorService io; //the I/O executor, created on first use
+
+    private ExecutionService(int parallelism, Pool kind, boolean virtual) {
+        this.parallelism = Math.max(1, parallelism);
+        this.kind = kind;
+        this.virtual = virtual;
+    }
+
+    public static ExecutionService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replaces the configuration, shutting down the threads of the old one
+     * @param parallelism compute threads, 1 to run in the calling thread
+     * @param kind common or dedicated compute pool
+     * @param virtual true for virtual I/O threads when the JVM has them
+     */
+    public synchronized void configure(int parallelism, Pool kind, boolean virtual) {
+        shutdown();
+        this.parallelism = Math.max(1, parallelism);
+        this.kind = kind;
+        this.virtual = virtual;
+    }
+
+    /**
+     * @return the number of compute threads
+     */
+    public synchronized int parallelism() {
+        return kind == Pool.COMMON ? ForkJoinPool.getCommonPoolParallelism() : parallelism;
+    }
+
+    /**
+     * @return the fork-join pool of compute work
+     */
+    public synchronized ForkJoinPool pool() {
+        if (kind == Pool.COMMON) {
+            return ForkJoinPool.commonPool();
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Runs a fork-join task in the compute pool and waits for it
+     * @param <T> the result type
+     * @param task the task, e.g. a ConcurrentSeries
+     * @return the result of the task
+     */
+    public <T> T invoke(ForkJoinTask<T> task) {
+        if (parallelism() == 1) {
+            return task.invoke(); //forks run in the calling thread
+        }
+        ForkJoinPool compute = pool();
+        return ForkJoinTask.getPool() == compute ? task.invoke() : compute.invoke(task);
+    }
+
+    /**
+     * Runs body(i) for every i from first to last, exclusive, in the compute
+     * pool and waits for all of them. Nested calls share the same workers.
+     * @param first the first index
+     * @param last the last index, exclusive
+     * @param body the work for one index, safe to call from several threads
+     */
+    public void parallelFor(int first, int last, IntConsumer body) {
+        if (parallelism() == 1 || last - first < 2) {
+            for (int i = first; i < last; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        ForkJoinPool compute = pool();
+        if (ForkJoinTask.getPool() == compute) {
+            IntStream.range(first, last).parallel().forEach(body);
+        } else {
+            compute.submit(() -> IntStream.range(first, last).parallel().forEach(body)).join();
+        }
+    }
+
+    /**
+     * @return the executor of blocking I/O stages
+     */
+    public synchronized ExecutorService io() {
+        if (io == null) {
+            io = virtual ? virtualThreads() : null;
+            if (io == null) {
+                virtual = false; //not available in this JVM
+                io = Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "nestedsums-io");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+        return io;
+    }
+
+    /**
+     * Stops the threads of the dedicated pool and the I/O executor once their
+     * tasks are done. The common pool belongs to the JVM and keeps running.
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (io != null) {
+            io.shutdown();
+            io = null;
+        }
+    }
+
+    /*
+     * A virtual thread per task executor, null if the JVM has none (before
+     * Java 21, or Java 19 and 20 without preview features)
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return kind.name().toLowerCase() + " pool of " + parallelism() + " threads, "
+                + (virtual ? "virtual" : "platform") + " I/O threads";
+    }
+}
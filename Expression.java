@@ -0,0 +1,580 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A nested sum written as an expression over the elements of coefficient
+ * tables, instead of a chain of Sequence objects. For example the trace of
+ * ro squared from the B table is
+ *
+ *   Index n = Expression.index("n"), m = ..., l = ...;
+ *   Expression f = Expression.sum(l, 0, max,
+ *           Expression.element(b, n, l).times(Expression.element(b, m, l).conj()));
+ *   Expression tr = Expression.sum(n, 0, max, Expression.sum(m, 0, max,
+ *           f.modulusSquared()));
+ *
+ * Every value is complex. ExpressionCompiler turns a closed expression, one
+ * whose indices are all bound by sums, into a single loop nest over plain
+ * arrays, with no calls, boxing or index arrays per term. Expressions are
+ * immutable and may be shared; the tables are read when the expression is
+ * compiled or interpreted, so their values must be complete by then.
+ *
+ * @author forest
+ */
+public abstract class Expression {
+
+    /**
+     * A summation index. Indices are told apart by identity, the name only
+     * labels the generated code.
+     */
+    public static final class Index {
+
+        final String name; //label of the index
+
+        private Index(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * @param name label of the index
+     * @return a new summation index
+     */
+    public static Index index(String name) {
+        return new Index(name);
+    }
+
+    /**
+     * A complex constant
+     *
+     * @param re real part
+     * @param im imaginary part
+     * @return the constant
+     */
+    public static Expression constant(double re, double im) {
+        return new Constant(re, im);
+    }
+
+    /**
+     * The element at (row, column) of a complex table stored row by row, as in
+     * MemoizedSequence
+     *
+     * @param re real parts of the table
+     * @param im imaginary parts of the table, null for a real table
+     * @param columns number of columns of the table
+     * @param row the index giving the row
+     * @param column the index giving the column
+     * @return the element
+     */
+    public static Expression element(MatrixStore re, MatrixStore im, int columns, Index row,
+            Index column) {
+        return new Element(re, im, columns, row, column);
+    }
+
+    /**
+     * The element at (row, column) of a filled two index MemoizedSequence
+     *
+     * @param table the table
+     * @param row the index giving the row
+     * @param column the index giving the column
+     * @return the element
+     */
+    public static Expression element(MemoizedSequence table, Index row, Index column) {
+        return element(table.re, table.im, table.shape()[1], row, column);
+    }
+
+    /**
+     * The sum of body for index from first to last, exclusive
+     *
+     * @param index the summation index
+     * @param first first value of the index
+     * @param last last value of the index, exclusive
+     * @param body the summed expression
+     * @return the sum
+     */
+    public static Expression sum(Index index, int first, int last, Expression body) {
+        return new Sum(index, first, last, null, body);
+    }
+
+    /**
+     * The sum of body for index from first up to, not including, the value of
+     * an outer index, for triangular sums
+     *
+     * @param index the summation index
+     * @param first first value of the index
+     * @param below the outer index bounding this one
+     * @param body the summed expression
+     * @return the sum
+     */
+    public static Expression sum(Index index, int first, Index below, Expression body) {
+        return new Sum(index, first, 0, below, body);
+    }
+
+    /**
+     * @param e another expression
+     * @return this expression times e
+     */
+    public Expression times(Expression e) {
+        return new Product(this, e);
+    }
+
+    /**
+     * @param e another expression
+     * @return this expression plus e
+     */
+    public Expression plus(Expression e) {
+        return new Addition(this, e);
+    }
+
+    /**
+     * @param factor a real factor
+     * @return this expression times the factor
+     */
+    public Expression scale(double factor) {
+        return new Product(this, constant(factor, 0.0));
+    }
+
+    /**
+     * @return the complex conjugate of this expression
+     */
+    public Expression conj() {
+        return new Conjugate(this);
+    }
+
+    /**
+     * @return the squared modulus of this expression, which is real
+     */
+    public Expression modulusSquared() {
+        return new Modulus(this);
+    }
+
+    /**
+     * @return true if the imaginary part is always zero
+     */
+    abstract boolean real();
+
+    /*
+     * Writes Java statements that compute this expression into code and
+     * returns the Java expressions of its real and imaginary parts
+     */
+    abstract String[] emit(Binding b, StringBuilder code, String indent);
+
+    /*
+     * An evaluator of this expression for the interpreter
+     */
+    abstract Evaluator bind(Binding b);
+
+    /**
+     * Numbers the indices, tables and temporaries of an expression, the same
+     * way for the generated code and the interpreter
+     */
+    static final class Binding {
+
+        final Map<Index, Integer> indices = new IdentityHashMap<>(); //index slots
+        final Map<MatrixStore, Integer> tables = new IdentityHashMap<>(); //array slots
+        final List<double[]> arrays = new ArrayList<>(); //the table values
+        private int temporaries; //locals declared so far
+        int slots; //most indices bound at once
+
+        int index(Index i) {
+            Integer slot = indices.get(i);
+            if (slot == null) {
+                throw new IllegalStateException("Index " + i + " is not bound by a sum");
+            }
+            return slot;
+        }
+
+        int bindIndex(Index i) {
+            if (indices.containsKey(i)) {
+                throw new IllegalStateException("Index " + i + " is summed twice");
+            }
+            indices.put(i, indices.size());
+            slots = Math.max(slots, indices.size());
+            return indices.size() - 1;
+        }
+
+        void unbindIndex(Index i) {
+            indices.remove(i);
+        }
+
+        /*
+         * The slot of a table, whose values are copied to the heap if the
+         * store has no backing array
+         */
+        int table(MatrixStore store) {
+            Integer slot = tables.get(store);
+            if (slot == null) {
+                double[] values = store.array();
+                if (values == null) {
+                    values = new double[store.size()];
+                    store.copyTo(0, values, 0, values.length);
+                }
+                slot = arrays.size();
+                arrays.add(values);
+                tables.put(store, slot);
+            }
+            return slot;
+        }
+
+        String temporary(String prefix) {
+            return prefix + (temporaries++);
+        }
+    }
+
+    /**
+     * Interpreter node. The value of the last evaluation is left in re and
+     * im, so an evaluation creates no objects.
+     */
+    abstract static class Evaluator {
+
+        double re, im; //value of the last evaluation
+
+        abstract void eval(int[] vars);
+    }
+
+    private static String literal(double x) {
+        if (Double.isNaN(x)) {
+            return "Double.NaN";
+        }
+        if (Double.isInfinite(x)) {
+            return x > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+        return x == 0.0 && 1.0 / x > 0 ? "0.0" : "(" + Double.toHexString(x) + ")";
+    }
+
+    private static boolean zero(String part) {
+        return "0.0".equals(part);
+    }
+
+    private static String mul(String a, String b) {
+        return zero(a) || zero(b) ? "0.0" : a + " * " + b;
+    }
+
+    private static String add(String a, String b) {
+        return zero(a) ? b : zero(b) ? a : a + " + " + b;
+    }
+
+    private static String sub(String a, String b) {
+        return zero(b) ? a : zero(a) ? "-(" + b + ")" : a + " - " + b;
+    }
+
+    private static String declare(Binding b, StringBuilder code, String indent, String value) {
+        if (zero(value)) {
+            return value;
+        }
+        String name = b.temporary("t");
+        code.append(indent).append("double ").append(name).append(" = ").append(value)
+                .append(";\n");
+        return name;
+    }
+
+    private static final class Constant extends Expression {
+
+        final double re, im;
+
+        Constant(double re, double im) {
+            this.re = re;
+            this.im = im;
+        }
+
+        @Override
+        boolean real() {
+            return im == 0.0;
+        }
+
+        @Override
+        String[] emit(Binding b, StringBuilder code, String indent) {
+            return new String[]{literal(re), im == 0.0 ? "0.0" : literal(im)};
+        }
+
+        @Override
+        Evaluator bind(Binding b) {
+            Evaluator e = new Evaluator() {
+                @Override
+                void eval(int[] vars) {
+                }
+            };
+            e.re = re;
+            e.im = im;
+            return e;
+        }
+    }
+
+    private static final class Element extends Expression {
+
+        final MatrixStore re, im;
+        final int columns;
+        final Index row, column;
+
+        Element(MatrixStore re, MatrixStore im, int columns, Index row, Index column) {
+            this.re = re;
+            this.im = im;
+            this.columns = columns;
+            this.row = row;
+            this.column = column;
+        }
+
+        @Override
+        boolean real() {
+            return im == null;
+        }
+
+        @Override
+        String[] emit(Binding b, StringBuilder code, String indent) {
+            String offset = "i" + b.index(row) + " * " + columns + " + i" + b.index(column);
+            String r = declare(b, code, indent, "a" + b.table(re) + "[" + offset + "]");
+            String i = im == null ? "0.0"
+                    : declare(b, code, indent, "a" + b.table(im) + "[" + offset + "]");
+            return new String[]{r, i};
+        }
+
+        @Override
+        Evaluator bind(Binding b) {
+            int r = b.index(row);
+            int c = b.index(column);
+            double[] rev = b.arrays.get(b.table(re));
+            double[] imv = im == null ? null : b.arrays.get(b.table(im));
+            return new Evaluator() {
+                @Override
+                void eval(int[] vars) {
+                    int offset = vars[r] * columns + vars[c];
+                    re = rev[offset];
+                    im = imv == null ? 0.0 : imv[offset];
+                }
+            };
+        }
+    }
+
+    private static final class Product extends Expression {
+
+        final Expression a, b;
+
+        Product(Expression a, Expression b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        boolean real() {
+            return a.real() && b.real();
+        }
+
+        @Override
+        String[] emit(Binding bd, StringBuilder code, String indent) {
+            String[] x = a.emit(bd, code, indent);
+            String[] y = b.emit(bd, code, indent);
+            String r = declare(bd, code, indent, sub(mul(x[0], y[0]), mul(x[1], y[1])));
+            String i = declare(bd, code, indent, add(mul(x[0], y[1]), mul(x[1], y[0])));
+            return new String[]{r, i};
+        }
+
+        @Override
+        Evaluator bind(Binding bd) {
+            Evaluator x = a.bind(bd);
+            Evaluator y = b.bind(bd);
+            return new Evaluator() {
+                @Override
+                void eval(int[] vars) {
+                    x.eval(vars);
+                    y.eval(vars);
+                    re = x.re * y.re - x.im * y.im;
+                    im = x.re * y.im + x.im * y.re;
+                }
+            };
+        }
+    }
+
+    private static final class Addition extends Expression {
+
+        final Expression a, b;
+
+        Addition(Expression a, Expression b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        boolean real() {
+            return a.real() && b.real();
+        }
+
+        @Override
+        String[] emit(Binding bd, StringBuilder code, String indent) {
+            String[] x = a.emit(bd, code, indent);
+            String[] y = b.emit(bd, code, indent);
+            return new String[]{declare(bd, code, indent, add(x[0], y[0])),
+                declare(bd, code, indent, add(x[1], y[1]))};
+        }
+
+        @Override
+        Evaluator bind(Binding bd) {
+            Evaluator x = a.bind(bd);
+            Evaluator y = b.bind(bd);
+            return new Evaluator() {
+                @Override
+                void eval(int[] vars) {
+                    x.eval(vars);
+                    y.eval(vars);
+                    re = x.re + y.re;
+                    im = x.im + y.im;
+                }
+            };
+        }
+    }
+
+    private static final class Conjugate extends Expression {
+
+        final Expression a;
+
+        Conjugate(Expression a) {
+            this.a = a;
+        }
+
+        @Override
+        boolean real() {
+            return a.real();
+        }
+
+        @Override
+        String[] emit(Binding b, StringBuilder code, String indent) {
+            String[] x = a.emit(b, code, indent);
+            return new String[]{x[0], zero(x[1]) ? "0.0" : declare(b, code, indent, "-" + x[1])};
+        }
+
+        @Override
+        Evaluator bind(Binding b) {
+            Evaluator x = a.bind(b);
+            return new Evaluator() {
+                @Override
+                void eval(int[] vars) {
+                    x.eval(vars);
+                    re = x.re;
+                    im = -x.im;
+                }
+            };
+        }
+    }
+
+    private static final class Modulus extends Expression {
+
+        final Expression a;
+
+        Modulus(Expression a) {
+            this.a = a;
+        }
+
+        @Override
+        boolean real() {
+            return true;
+        }
+
+        @Override
+        String[] emit(Binding b, StringBuilder code, String indent) {
+            String[] x = a.emit(b, code, indent);
+            return new String[]{declare(b, code, indent, add(mul(x[0], x[0]), mul(x[1], x[1]))),
+                "0.0"};
+        }
+
+        @Override
+        Evaluator bind(Binding b) {
+            Evaluator x = a.bind(b);
+            return new Evaluator() {
+                @Override
+                void eval(int[] vars) {
+                    x.eval(vars);
+                    re = x.re * x.re + x.im * x.im;
+                    im = 0.0;
+                }
+            };
+        }
+    }
+
+    private static final class Sum extends Expression {
+
+        final Index index;
+        final int first, last;
+        final Index below; //outer index bounding this one, null for last
+        final Expression body;
+
+        Sum(Index index, int first, int last, Index below, Expression body) {
+            this.index = index;
+            this.first = first;
+            this.last = last;
+            this.below = below;
+            this.body = body;
+        }
+
+        @Override
+        boolean real() {
+            return body.real();
+        }
+
+        @Override
+        String[] emit(Binding b, StringBuilder code, String indent) {
+            String bound = below == null ? Integer.toString(last) : "i" + b.index(below);
+            int slot = b.bindIndex(index);
+            String r = b.temporary("s");
+            String i = body.real() ? "0.0" : b.temporary("s");
+            code.append(indent).append("double ").append(r).append(" = 0.0;\n");
+            if (!zero(i)) {
+                code.append(indent).append("double ").append(i).append(" = 0.0;\n");
+            }
+            code.append(indent).append("for (int i").append(slot).append(" = ").append(first)
+                    .append("; i").append(slot).append(" < ").append(bound).append("; i")
+                    .append(slot).append("++) { // ").append(index.name).append('\n');
+            String[] x = body.emit(b, code, indent + "    ");
+            code.append(indent).append("    ").append(r).append(" += ").append(x[0])
+                    .append(";\n");
+            if (!zero(i)) {
+                code.append(indent).append("    ").append(i).append(" += ").append(x[1])
+                        .append(";\n");
+            }
+            code.append(indent).append("}\n");
+            b.unbindIndex(index);
+            return new String[]{r, i};
+        }
+
+        @Override
+        Evaluator bind(Binding b) {
+            int outer = below == null ? -1 : b.index(below);
+            int slot = b.bindIndex(index);
+            Evaluator x = body.bind(b);
+            b.unbindIndex(index);
+            return new Evaluator() {
+                @Override
+                void eval(int[] vars) {
+                    int end = outer < 0 ? last : vars[outer];
+                    double sr = 0.0;
+                    double si = 0.0;
+                    for (int i = first; i < end; i++) {
+                        vars[slot] = i;
+                        x.eval(vars);
+                        sr += x.re;
+                        si += x.im;
+                    }
+                    re = sr;
+                    im = si;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Checks the Tr(ro squared) expression of TrRoSquared.fused over a small B
+ * table three ways for both fields: as the loop nest ExpressionCompiler
+ * generates, by its interpreter, and from the F table (F_ab and TrRoSquared
+ * without fusing). The generated nest and the interpreter add in the same
+ * order and must be equal; the F table path adds in another order.
+ *
+ * @author forest
+ */
+public class ExpressionCheck {
+
+    static final double TOLERANCE = 1e-12; //relative difference from the F table path
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Compiled and interpreted expressions agree with F_ab to "
+                + TOLERANCE);
+    }
+
+    static void run() {
+        EntropyParameters ep = new EntropyParameters(
+                new double[]{50.0, 1.0, 1.0, 4.0, 4.0, 0.0, 1, 0.25});
+        double time = (ep.steps() / 2) * ep.interval;
+        int max = ep.max();
+        ExpressionCompiler compiler = ExpressionCompiler.getInstance();
+        BSingleton bs = BSingleton.getInstance();
+        bs.init(ep);
+        try {
+            for (FieldMode field : new FieldMode[]{FieldMode.A, FieldMode.B}) {
+                double expected = new TrRoSquared(max, new F_ab(time, ep, field)).calculate();
+                MemoizedSequence b = bs.table(time);
+                Checks.require(b != null, "no filled B table at " + time);
+                Expression trace = TrRoSquared.trace(b, max, field);
+                CompiledExpression compiled = compiler.compile(trace);
+                Checks.require(!compiler.isCompiling() || compiled.getClass().isHidden(),
+                        "field " + field + " expression was interpreted, not compiled");
+                double generated = compiled.evaluate().real();
+                double interpreted = compiler.interpret(trace).evaluate().real();
+                Checks.require(generated == interpreted, "field " + field + " loop nest gives "
+                        + generated + ", the interpreter " + interpreted);
+                Checks.require(Checks.relative(generated, expected) <= TOLERANCE, "field " + field
+                        + " expression gives " + generated + ", the F table " + expected);
+            }
+        } finally {
+            bs.release();
+        }
+    }
+}
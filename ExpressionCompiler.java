@@ -0,0 +1,198 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Turns closed Expressions into specialised loop nests at runtime. The loop
+ * nest is generated as Java source, compiled in memory by the system Java
+ * compiler and defined as a hidden class of this package, whose fields hold
+ * the table arrays. The JIT then sees plain nested loops over arrays, like a
+ * hand written kernel.
+ *
+ * Classes are cached by their source, so expressions of the same shape over
+ * tables of the same size (every time step of a run) are compiled once and
+ * only instantiated with new arrays. A source that fails to compile is cached
+ * as a failure, reported once and interpreted from then on. Where the compiler is not available (a
+ * runtime without the jdk.compiler module) or the property
+ * nestedsums.compile is false, expressions are interpreted instead, with the
+ * same order of operations.
+ *
+ * @author forest
+ */
+public class ExpressionCompiler {
+
+    private static final ExpressionCompiler instance = new ExpressionCompiler();
+    private static final String NAME = "GeneratedExpression"; //class name of the loop nests
+
+    private final JavaCompiler javac; //the system compiler, null if missing
+    private final Map<String, Optional<MethodHandle>> classes = new ConcurrentHashMap<>();
+                                               //constructors by source, empty if not compiled
+
+    private ExpressionCompiler() {
+        JavaCompiler compiler = null;
+        if (Boolean.parseBoolean(System.getProperty("nestedsums.compile", "true"))) {
+            try {
+                compiler = ToolProvider.getSystemJavaCompiler();
+            } catch (LinkageError e) {
+                //no compiler in this runtime
+            }
+        }
+        this.javac = compiler;
+    }
+
+    public static ExpressionCompiler getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return true if expressions are compiled, false if they are interpreted
+     */
+    public boolean isCompiling() {
+        return javac != null;
+    }
+
+    /**
+     * Prepares a closed expression for evaluation, as a generated loop nest
+     * if possible and by the interpreter otherwise
+     *
+     * @param e an expression whose indices are all bound by sums
+     * @return the expression ready to evaluate
+     */
+    public CompiledExpression compile(Expression e) {
+        if (javac != null) {
+            Expression.Binding b = new Expression.Binding();
+            String source = source(e, b);
+            try {
+                Optional<MethodHandle> constructor = classes.computeIfAbsent(source, this::define);
+                if (constructor.isPresent()) {
+                    return (CompiledExpression) constructor.get()
+                            .invoke((Object) b.arrays.toArray(new double[0][]));
+                }
+            } catch (ReflectiveOperationException | LinkageError | ClassCastException ex) {
+                //the loop nest could not be defined or built, interpret it
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable t) {
+                //the generated constructor only assigns fields
+                throw new IllegalStateException("Loop nest constructor failed", t);
+            }
+        }
+        return interpret(e);
+    }
+
+    /**
+     * Prepares a closed expression for the interpreter
+     *
+     * @param e an expression whose indices are all bound by sums
+     * @return the expression ready to evaluate
+     */
+    public CompiledExpression interpret(Expression e) {
+        Expression.Binding b = new Expression.Binding();
+        Expression.Evaluator root = e.bind(b);
+        int[] vars = new int[b.slots];
+        return () -> {
+            root.eval(vars);
+            return new Complex(root.re, root.im);
+        };
+    }
+
+    /**
+     * @param e an expression whose indices are all bound by sums
+     * @return the Java source of the loop nest of the expression
+     */
+    public String source(Expression e) {
+        return source(e, new Expression.Binding());
+    }
+
+    private static String source(Expression e, Expression.Binding b) {
+        StringBuilder body = new StringBuilder();
+        String[] value = e.emit(b, body, "        ");
+        StringBuilder code = new StringBuilder();
+        code.append("package nestedsums;\n\n");
+        code.append("final class ").append(NAME).append(" implements CompiledExpression {\n\n");
+        for (int k = 0; k < b.arrays.size(); k++) {
+            code.append("    private final double[] a").append(k).append(";\n");
+        }
+        code.append("\n    ").append(NAME).append("(double[][] a) {\n");
+        for (int k = 0; k < b.arrays.size(); k++) {
+            code.append("        a").append(k).append(" = a[").append(k).append("];\n");
+        }
+        code.append("    }\n\n    @Override\n    public Complex evaluate() {\n");
+        code.append(body);
+        code.append("        return new Complex(").append(value[0]).append(", ")
+                .append(value[1]).append(");\n    }\n}\n");
+        return code.toString();
+    }
+
+    /*
+     * Compiles a loop nest and defines it as a hidden class, empty on failure
+     */
+    private Optional<MethodHandle> define(String source) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JavaFileObject input = new SimpleJavaFileObject(
+                URI.create("string:///nestedsums/" + NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(
+                javac.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location,
+                    String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + className), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return bytes;
+                    }
+                };
+            }
+        };
+        StringWriter errors = new StringWriter();
+        boolean compiled = javac.getTask(errors, files, null,
+                List.of("-classpath", System.getProperty("java.class.path"), "-proc:none"),
+                null, List.of(input)).call();
+        if (!compiled) {
+            System.out.println("Expression not compiled, interpreting it: " + errors);
+            return Optional.empty();
+        }
+        try {
+            MethodHandles.Lookup hidden = MethodHandles.lookup()
+                    .defineHiddenClass(bytes.toByteArray(), true);
+            return Optional.of(hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class, double[][].class)));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Expression not defined, interpreting it: " + e);
+            return Optional.empty();
+        }
+    }
+}
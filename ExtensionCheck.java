@@ -0,0 +1,157 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+
+/**
+ * Checks that growing a truncation gives the same results as starting at
+ * the larger truncation: MemoizedSequence.extend and scale keep exactly the
+ * stored terms, Series and ComplexSeries.extend (plain and accelerated) equal
+ * a new series over the larger box, and a run grown from 16 to 24 photon
+ * numbers by BSingleton.extend and F_ab.extend (N_0 rescaling, B borders,
+ * F borders for both fields) matches a direct run at 24.
+ *
+ * @author forest
+ */
+public class ExtensionCheck {
+
+    static final double TOLERANCE = 1e-12; //difference from the direct result
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Extended tables and series agree with direct runs to " + TOLERANCE);
+    }
+
+    static void run() {
+        table(false);
+        table(true);
+        series();
+        run(new double[]{50.0, 1.0, 1.0, 4.0, 4.0, 0.0, 1, 0.25}, 24);
+    }
+
+    /*
+     * Every third term of a 5 x 7 table is stored, the table grows to 9 x 8
+     * and is doubled: the stored terms keep their place and are doubled, and
+     * no other term is marked as stored
+     */
+    private static void table(boolean concurrent) {
+        Sequence f = indices -> new Complex(indices[0] + 0.5, 100.0 * indices[1]);
+        MemoizedSequence table = new MemoizedSequence(f, new int[]{5, 7}, true, concurrent);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 7; j++) {
+                if ((i * 7 + j) % 3 == 0) {
+                    table.getTerm(new int[]{i, j});
+                }
+            }
+        }
+        table.extend(new int[]{9, 8});
+        table.scale(2.0);
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 8; j++) {
+                int[] indices = {i, j};
+                boolean stored = i < 5 && j < 7 && (i * 7 + j) % 3 == 0;
+                Checks.require(table.isComputed(indices) == stored, "term (" + i + ", " + j
+                        + ") is " + (stored ? "lost" : "marked stored") + " after extend");
+                Complex term = (Complex) table.getTerm(indices);
+                double factor = stored ? 2.0 : 1.0;
+                Checks.require(term.real() == factor * (i + 0.5)
+                        && term.imag() == factor * 100.0 * j,
+                        "term (" + i + ", " + j + ") is " + term + " after extend and scale");
+            }
+        }
+    }
+
+    /*
+     * Series grown from 10 to 30 terms and ComplexSeries from 7 to 19, with
+     * terms that are not symmetric in their indices
+     */
+    private static void series() {
+        Sequence real = indices -> Math.exp(-0.1 * (indices[0] + 2 * indices[1]));
+        Series plain = new Series(real, 10, 2);
+        plain.calculate();
+        compare("Series.extend", plain.extend(30), new Series(real, 30, 2).calculate());
+        Series accelerated = new Series(real, 10, 2, new Acceleration(Acceleration.Method.WYNN));
+        accelerated.calculate();
+        Series direct = new Series(real, 30, 2, new Acceleration(Acceleration.Method.WYNN));
+        compare("accelerated Series.extend", accelerated.extend(30), direct.calculate());
+        compare("accelerated Series.extend error estimate", accelerated.getErrorEstimate(),
+                direct.getErrorEstimate());
+        Sequence complex = indices -> new Complex(
+                Math.exp(-0.1 * indices[0]) * Math.cos(indices[1]),
+                Math.sin(indices[0] + indices[1]));
+        ComplexSeries grown = new ComplexSeries(complex, 7, 2);
+        grown.calculate();
+        Complex value = grown.extend(19);
+        Complex expected = new ComplexSeries(complex, 19, 2).calculate();
+        compare("ComplexSeries.extend real part", value.real(), expected.real());
+        compare("ComplexSeries.extend imaginary part", value.imag(), expected.imag());
+    }
+
+    /*
+     * A run at the default truncation of params, with F tables of both
+     * fields filled at one time step, grown to max and compared with a run
+     * that starts at max
+     */
+    private static void run(double[] params, int max) {
+        EntropyParameters ep = new EntropyParameters(params);
+        int from = ep.max();
+        int steps = ep.steps();
+        double time = (steps / 2) * ep.interval;
+        BSingleton bs = BSingleton.getInstance();
+        double[] entropy = new double[steps];
+        double[] norm = new double[steps];
+        double purityA;
+        double purityB;
+        bs.init(ep);
+        try {
+            F_ab fa = new F_ab(time, ep, FieldMode.A);
+            F_ab fb = new F_ab(time, ep, FieldMode.B);
+            fa.calculate(new int[]{0, 0, from, from});
+            fb.calculate(new int[]{0, 0, from, from});
+            bs.extend(max);
+            fa.extend(max);
+            fb.extend(max);
+            for (int t = 0; t < steps; t++) {
+                entropy[t] = new LinearEntropy(t * ep.interval, ep).calculate();
+                norm[t] = bs.getNorm(t * ep.interval);
+            }
+            purityA = new TrRoSquared(max, fa).calculate();
+            purityB = new TrRoSquared(max, fb).calculate();
+        } finally {
+            bs.release();
+        }
+        double[] larger = Arrays.copyOf(params, 9);
+        larger[8] = max;
+        EntropyParameters direct = new EntropyParameters(larger);
+        bs.init(direct);
+        try {
+            for (int t = 0; t < steps; t++) {
+                double at = t * direct.interval;
+                compare("linear entropy at " + at, entropy[t],
+                        new LinearEntropy(at, direct).calculate());
+                compare("B normalisation at " + at, norm[t], bs.getNorm(at));
+            }
+            compare("extended F of field a", purityA,
+                    1.0 - new LinearEntropy(time, direct, FieldMode.A).calculate());
+            compare("extended F of field b", purityB,
+                    1.0 - new LinearEntropy(time, direct, FieldMode.B).calculate());
+        } finally {
+            bs.release();
+        }
+    }
+
+    private static void compare(String name, double value, double expected) {
+        Checks.require(Math.abs(value - expected) <= TOLERANCE * Math.max(1.0, Math.abs(expected)),
+                name + " is " + value + ", directly " + expected);
+    }
+}
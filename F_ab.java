@@ -27,7 +27,10 @@ public class F_ab implements Sequence {
     int max; //the maximum number of terms in the series to calculate any value
     BSingleton bt; //B_ab sequence for the time (see above) examined
     BSingleton bt_cnj; //B_ab conjugate sequence for the time examined
-    Complex[][] terms; //the individual series terms, not the final value
+    MemoizedSequence terms; //the individual series terms, not the final value
+    Summation summation = Summation.PLAIN; //accumulation of the B products
+    FieldMode field = FieldMode.A; //the field whose reduced state is summed
+    double normalisation; //N_0 of the B coefficients the terms are made of
 
     /**
      * "raw" F_ab constructor 
@@ -38,6 +41,9 @@ public class F_ab implements Sequence {
         this.time = time; //scaled time of the state-reductive measurement
         this.max = max; //the number of summation terms to use
         this.bt = BSingleton.getInstance(); //B coefficient of the system
+        this.normalisation = bt.normalisation(time);
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, true, true,
+                bt.arena());
     }
 
     /**
@@ -47,12 +53,26 @@ public class F_ab implements Sequence {
      */
     public F_ab(double time, EntropyParameters ep) {
         this.time = time;
-        this.max = ep.alpha2sq * ep.alpha1sq;
-        if (this.max < 16) {
-            this.max = 16;
-        }
-         terms = new Complex[max][max];
+        this.summation = ep.summation;
+        this.max = ep.max();
         this.bt = BSingleton.getInstance();
+        this.normalisation = bt.normalisation(time);
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, true, true,
+                bt.arena());
+    }
+
+    /**
+     * Encapsulated F coefficient constructor for either field
+     * @param time
+     * @param ep
+     * @param field A for ro_a = B B^H, B for ro_b = B^T B*
+     */
+    public F_ab(double time, EntropyParameters ep, FieldMode field) {
+        this(time, ep);
+        if (field == FieldMode.BOTH) {
+            throw new IllegalArgumentException("F_ab sums one field at a time");
+        }
+        this.field = field;
     }
 
     /**
@@ -63,21 +83,86 @@ public class F_ab implements Sequence {
         if (indices.length > 2) {
             throw new IndexOutOfBoundsException();
         }
-        //if the term is already calculated, fetch stored value
-        if (terms != null && terms[indices[0]][indices[1]] != null) {
-            if (indices[1] < this.terms[0].length && indices[0] < this.terms.length) {
-                return terms[indices[0]][indices[1]];
-            }
+        return (Complex) terms.getTerm(indices);
+    }
+
+    /*
+     * Calculates an F term as the sum of B products over the common index, the
+     * second index of B for field a and the first for field b. F is
+     * Hermitian, so a stored mirror image is reused as its conjugate. The
+     * products are summed by the loop kernels straight from the B table when
+     * it is cached, and term by term otherwise.
+     */
+    private Complex calculateTerm(int[] indices) {
+        int[] mirror = {indices[1], indices[0]};
+        if (terms.isComputed(mirror)) {
+            return ((Complex) terms.getTerm(mirror)).conj();
+        }
+        Complex product = product(indices[0], indices[1], 0, max);
+        if (product != null) {
+            return product;
         }
-        //if the term is not already calculated, calculate it
         ComplexSeries sum = new ComplexSeries(new Bsq(indices), max, 1);
         return sum.calculate();
     }
 
+    /*
+     * The sum of B products over the common indices from <= l < to, straight
+     * from the cached B table, null if it is not cached
+     */
+    private Complex product(int n, int m, int from, int to) {
+        return field == FieldMode.B
+                ? bt.columnProduct(time, n, m, from, to, summation)
+                : bt.rowProduct(time, n, m, from, to, summation);
+    }
+
+    /**
+     * Grows the F table to a larger truncation after the B table has grown.
+     * F(n,m) is a sum over the common index, so a stored term becomes the old
+     * term rescaled by the square of the change of N_0 plus the products of
+     * the new common indices, and the terms of the new border are calculated
+     * on demand like any other. Without a cached B table every term is
+     * calculated again.
+     * @param max the new maximum number of terms in every sum
+     */
+    public void extend(int max) {
+        int from = this.max;
+        if (max <= from) {
+            return;
+        }
+        double now = bt.normalisation(time);
+        this.max = max;
+        if (Double.isNaN(normalisation) || bt.table(time) == null
+                || terms.re == null || terms.shape()[0] != from) {
+            terms.release();
+            terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, true, true,
+                    bt.arena());
+            normalisation = now;
+            return;
+        }
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.F, time);
+        double ratio = normalisation / now;
+        terms.scale(ratio * ratio);
+        ExecutionService.getInstance().parallelFor(0, from, n -> {
+            for (int m = 0; m < from; m++) {
+                int[] cell = {n, m};
+                if (terms.isComputed(cell)) {
+                    Complex border = product(n, m, from, max);
+                    terms.put(cell, terms.real(cell) + border.real(),
+                            terms.imag(cell) + border.imag());
+                }
+            }
+        });
+        terms.extend(new int[]{max, max});
+        normalisation = now;
+        event.end((long) from * from);
+    }
+
     /**
      * Inner class defining the product of B_ab terms with one common index, l, 
      * and separate indices, n and m, upon which to evaluate each B_ab 
-     * coefficient prior to multiplying.
+     * coefficient prior to multiplying. The common index is the second index
+     * of B for field a and the first for field b.
      */
     public class Bsq implements Sequence {
 
@@ -94,21 +179,25 @@ public class F_ab implements Sequence {
         public Complex getTerm(int[] indices) throws IndexOutOfBoundsException {
             int[] aindices = new int[]{outerindices[0], indices[0]};
             int[] bindices = new int[]{outerindices[1], indices[0]};
+            if (field == FieldMode.B) {
+                aindices = new int[]{indices[0], outerindices[0]};
+                bindices = new int[]{indices[0], outerindices[1]};
+            }
             return bt.getB(time, aindices).prod(bt.getB(time, bindices).conj());
         }
     }
 
     /**
      * Fills in F_ab terms table of a given size.
-     * This has linear efficiency for the number of terms to calculate.
+     * This has linear efficiency for the number of terms to calculate, and the
+     * rows are filled in parallel. Terms whose mirror image is already stored
+     * cost only a conjugate.
      * @param indices Coordinates for the upper left and lower rightcells of the 
      *                table/matrix that define the range of terms to calculate 
      */
     public void calculate(int[] indices) {
-        for (int i = indices[0]; i < indices[2]; i++) {
-            for (int j = indices[1]; j < indices[3]; j++) {
-                terms[i][j] = getTerm(new int[]{i, j});
-            }
-        }
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.F, time);
+        terms.parallelFill(new int[]{indices[0], indices[1]}, new int[]{indices[2], indices[3]});
+        event.end((long) (indices[2] - indices[0]) * (indices[3] - indices[1]));
     }
 }
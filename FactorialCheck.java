@@ -0,0 +1,84 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Checks the exact factorials of FactorialSingleton against the plain
+ * sequential product: every n! around and between the checkpoints, after
+ * init to n that is not a multiple of STRIDE, a repeated init to a smaller n
+ * and an init that continues from the last one; and binary splitting
+ * products of long ranges (forked) and of integers near Integer.MAX_VALUE,
+ * where the leaves multiply in longs and must not overflow.
+ *
+ * @author forest
+ */
+public class FactorialCheck {
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Factorials agree with the sequential product");
+    }
+
+    static void run() {
+        FactorialSingleton fs = FactorialSingleton.getInstance();
+        fs.clear();
+        try {
+            BigInteger[] exact = new BigInteger[2101];
+            exact[0] = BigInteger.ONE;
+            for (int n = 1; n < exact.length; n++) {
+                exact[n] = exact[n - 1].multiply(BigInteger.valueOf(n));
+            }
+            fs.init(1000);
+            compare(fs, exact, 1100);
+            fs.init(300);
+            compare(fs, exact, 1100);
+            fs.init(2000);
+            compare(fs, exact, exact.length - 1);
+            for (int n : FactorialSingleton.cache.keySet()) {
+                Checks.require(n % FactorialSingleton.STRIDE == 0 || n == 300 || n == 1000
+                        || n == 2000, "unexpected checkpoint " + n + "!");
+            }
+            Checks.require(fs.getFactorial(-1) == null, "(-1)! is not null");
+            range(1, 3 * FactorialSingleton.SPLIT + 7);
+            range(Integer.MAX_VALUE - 2 * FactorialSingleton.LEAF - 3, Integer.MAX_VALUE);
+            range(2097000, 2097200); //three factors near the limit of a long
+        } finally {
+            fs.clear();
+        }
+    }
+
+    /*
+     * Requires getFactorial to give the exact n! for every n to last
+     */
+    private static void compare(FactorialSingleton fs, BigInteger[] exact, int last) {
+        for (int n = 0; n <= last; n++) {
+            Checks.require(exact[n].equals(fs.getFactorial(n)), n + "! is wrong after init to "
+                    + Arrays.toString(FactorialSingleton.cache.keySet().stream()
+                            .mapToInt(Integer::intValue).toArray()));
+        }
+    }
+
+    /*
+     * Requires product(lo, hi) to equal the sequential product of lo to hi - 1
+     */
+    private static void range(int lo, int hi) {
+        BigInteger exact = BigInteger.ONE;
+        for (int j = lo; j < hi; j++) {
+            exact = exact.multiply(BigInteger.valueOf(j));
+        }
+        Checks.require(exact.equals(FactorialSingleton.product(lo, hi)),
+                "product of " + lo + " to " + (hi - 1) + " is wrong");
+    }
+}
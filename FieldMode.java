@@ -0,0 +1,42 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * The field mode whose reduced state is examined. The state projected onto
+ * the fields by the measurement on the atom has the coefficients B(n,l) of
+ * |n> in mode a and |l> in mode b, so the reduced density operators are
+ *  A: ro_a = B B^H, tracing out mode b
+ *  B: ro_b = B^T B*, tracing out mode a
+ * Both come from the same B table at each time, and a run may ask for both.
+ * The projected state is pure, so the two purities agree and their difference
+ * is a check on the rounding of the sums.
+ *
+ * @author forest
+ */
+public enum FieldMode {
+
+    /**
+     * Field a, the sums run over the second index of B
+     */
+    A,
+
+    /**
+     * Field b, the sums run over the first index of B
+     */
+    B,
+
+    /**
+     * Both fields of every time step of a run, from one B table
+     */
+    BOTH
+}
@@ -0,0 +1,64 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Matrix store in a float array on the heap, for tables that only need single
+ * precision. Values are rounded to float when they are set and widened back
+ * to double when they are read.
+ *
+ * @author forest
+ */
+class FloatMatrixStore implements MatrixStore {
+
+    private final float[] values; //the stored values
+
+    FloatMatrixStore(int size) {
+        this.values = new float[size];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Precision precision() {
+        return Precision.FLOAT;
+    }
+
+    @Override
+    public double get(int offset) {
+        return values[offset];
+    }
+
+    @Override
+    public void set(int offset, double value) {
+        values[offset] = (float) value;
+    }
+
+    @Override
+    public void copyTo(int offset, double[] into, int start, int length) {
+        for (int i = 0; i < length; i++) {
+            into[start + i] = values[offset + i];
+        }
+    }
+
+    @Override
+    public double[] array() {
+        return null;
+    }
+
+    @Override
+    public void release() {
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Matrix store in a double array on the heap. Releasing it leaves the array
+ * to the garbage collector.
+ *
+ * @author forest
+ */
+class HeapMatrixStore implements MatrixStore {
+
+    private final double[] values; //the stored values
+
+    HeapMatrixStore(int size) {
+        this.values = new double[size];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Precision precision() {
+        return Precision.DOUBLE;
+    }
+
+    @Override
+    public double get(int offset) {
+        return values[offset];
+    }
+
+    @Override
+    public void set(int offset, double value) {
+        values[offset] = value;
+    }
+
+    @Override
+    public void copyTo(int offset, double[] into, int start, int length) {
+        System.arraycopy(values, offset, into, start, length);
+    }
+
+    @Override
+    public double[] array() {
+        return values;
+    }
+
+    @Override
+    public void release() {
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * A Hermitian matrix given only by its product with a vector, so iterative
+ * solvers such as Lanczos can work on matrices that are never formed. Complex
+ * vectors are held as separate real and imaginary arrays.
+ *
+ * @author forest
+ */
+public interface HermitianOperator {
+
+    /**
+     * @return the number of rows and columns of the matrix
+     */
+    public int dimension();
+
+    /**
+     * Computes y = A x. The output arrays are overwritten and are never the
+     * input arrays.
+     *
+     * @param xRe real parts of x
+     * @param xIm imaginary parts of x
+     * @param yRe receives the real parts of y
+     * @param yIm receives the imaginary parts of y
+     */
+    public void apply(double[] xRe, double[] xIm, double[] yRe, double[] yIm);
+}
@@ -0,0 +1,134 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Summation ranges that depend on the outer indices, for nested sums over
+ * triangles, simplices, bands and similar regions instead of a hypercube.
+ * The range of sum k is lower(indices, k) <= indices[k] < upper(indices, k),
+ * and may read only the indices of the sums outside it, indices[k + 1] and
+ * up, including any fixed outer indices beyond the depth of the series. An
+ * empty range contributes nothing.
+ *
+ * Series, ComplexSeries and ConcurrentSeries visit exactly the terms inside
+ * the bounds, so a triangular sum costs about half of the square around it.
+ *
+ * @author forest
+ */
+public interface IndexBounds {
+
+    /**
+     * @param indices current indices, those outside sum k are set
+     * @param dimension the sum k, 0 for the innermost
+     * @return the first index of sum k
+     */
+    public int lower(int[] indices, int dimension);
+
+    /**
+     * @param indices current indices, those outside sum k are set
+     * @param dimension the sum k, 0 for the innermost
+     * @return the last index of sum k, exclusive
+     */
+    public int upper(int[] indices, int dimension);
+
+    /**
+     * Every sum runs from 0 to max - 1, the hypercube of Series
+     *
+     * @param max number of terms in every sum
+     * @return the bounds
+     */
+    public static IndexBounds box(int max) {
+        return new IndexBounds() {
+            @Override
+            public int lower(int[] indices, int dimension) {
+                return 0;
+            }
+
+            @Override
+            public int upper(int[] indices, int dimension) {
+                return max;
+            }
+        };
+    }
+
+    /**
+     * Ordered indices, 0 <= i[0] <= i[1] <= ... <= i[depth - 1] < max, e.g.
+     * j <= i
+     *
+     * @param depth number of nested sums
+     * @param max number of terms of the outermost sum
+     * @return the bounds
+     */
+    public static IndexBounds triangular(int depth, int max) {
+        return new IndexBounds() {
+            @Override
+            public int lower(int[] indices, int dimension) {
+                return 0;
+            }
+
+            @Override
+            public int upper(int[] indices, int dimension) {
+                return dimension == depth - 1 ? max : indices[dimension + 1] + 1;
+            }
+        };
+    }
+
+    /**
+     * Indices whose total is at most a limit, i[0] + ... + i[depth - 1] <=
+     * total, e.g. n + m <= N
+     *
+     * @param depth number of nested sums
+     * @param total largest sum of the indices
+     * @return the bounds
+     */
+    public static IndexBounds simplex(int depth, int total) {
+        return new IndexBounds() {
+            @Override
+            public int lower(int[] indices, int dimension) {
+                return 0;
+            }
+
+            @Override
+            public int upper(int[] indices, int dimension) {
+                int left = total;
+                for (int k = dimension + 1; k < depth; k++) {
+                    left -= indices[k];
+                }
+                return left + 1;
+            }
+        };
+    }
+
+    /**
+     * Indices within a window of the next index out, |i[k] - i[k + 1]| <=
+     * width, all below max, e.g. photon numbers near that of the other field
+     *
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @param width largest distance from the next index out
+     * @return the bounds
+     */
+    public static IndexBounds band(int depth, int max, int width) {
+        return new IndexBounds() {
+            @Override
+            public int lower(int[] indices, int dimension) {
+                return dimension == depth - 1 ? 0 : Math.max(0, indices[dimension + 1] - width);
+            }
+
+            @Override
+            public int upper(int[] indices, int dimension) {
+                return dimension == depth - 1 ? max
+                        : Math.min(max, indices[dimension + 1] + width + 1);
+            }
+        };
+    }
+}
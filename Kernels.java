@@ -0,0 +1,252 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Loop kernels for the hot inner loops of the coefficient tables, working on
+ * structure-of-arrays data: the real and imaginary parts of complex values in
+ * two parallel double arrays, as MemoizedSequence stores them.
+ *
+ * The kernels run on the Vector API (the jdk.incubator.vector module) when it
+ * is available, and on plain scalar loops otherwise. The module is incubating
+ * in JDK 17, so it must be requested when the JVM starts:
+ *     java --add-modules jdk.incubator.vector ...
+ * Setting the system property nestedsums.vector to false selects the scalar
+ * loops even when the module is present. Vector reductions add their terms in
+ * a different order, so results may differ in the last few bits.
+ *
+ * @author forest
+ */
+public abstract class Kernels {
+    //Eagerly choose the kernels when the class is loaded so access does not 
+    //need to be synchronized.
+    private static final Kernels uniqueInstance = choose();
+    //rows copied out of off-heap stores, per thread
+    private static final ThreadLocal<double[][]> scratch =
+            ThreadLocal.withInitial(() -> new double[4][0]);
+
+    /**
+     * @return the vector kernels if the Vector API is available, otherwise the
+     *         scalar kernels
+     */
+    public static Kernels getInstance() {
+        return uniqueInstance;
+    }
+
+    /**
+     * Sum of a(i) * conj(b(i)) for i from 0 to length - 1, the complex dot
+     * product of two rows
+     *
+     * @param aRe real parts of a
+     * @param aIm imaginary parts of a
+     * @param a offset of the first element of a
+     * @param bRe real parts of b
+     * @param bIm imaginary parts of b
+     * @param b offset of the first element of b
+     * @param length number of products to sum
+     * @return the sum of the products
+     */
+    public abstract Complex dotConj(double[] aRe, double[] aIm, int a,
+            double[] bRe, double[] bIm, int b, int length);
+
+    /**
+     * Sum of |z(i)|^2 for i from 0 to length - 1
+     *
+     * @param re real parts of z
+     * @param im imaginary parts of z, null for real values
+     * @param from offset of the first element
+     * @param length number of elements to sum
+     * @return the sum of the squared moduli
+     */
+    public abstract double squaredModulus(double[] re, double[] im, int from, int length);
+
+    /**
+     * Fills out(i) = sqrt(base + step * i), e.g. the Rabi frequencies of a
+     * row of C0 terms, whose multiples of the time are the trig arguments
+     *
+     * @param base value under the root for i = 0
+     * @param step increase of the value under the root per element
+     * @param out receives the roots
+     * @param length number of roots to evaluate
+     */
+    public abstract void sqrtRamp(double base, double step, double[] out, int length);
+
+    /**
+     * dotConj of two rows of a table held in matrix stores. Rows of heap double
+     * stores are read in place; other rows are copied to double arrays first.
+     * Compensated sums run on scalar loops. The table values are doubles at
+     * best, so DOUBLE_DOUBLE summation is compensated here too.
+     *
+     * @param re real parts of the table
+     * @param im imaginary parts of the table
+     * @param a offset of the first row
+     * @param b offset of the second row
+     * @param length number of products to sum
+     * @param summation accumulation of the products
+     * @return the sum of the products
+     */
+    public Complex dotConj(MatrixStore re, MatrixStore im, int a, int b, int length,
+            Summation summation) {
+        double[] aRe = re.array();
+        double[] aIm = im.array();
+        double[] bRe = aRe;
+        double[] bIm = aIm;
+        if (aRe == null || aIm == null) {
+            double[][] rows = rows(length);
+            re.copyTo(a, rows[0], 0, length);
+            im.copyTo(a, rows[1], 0, length);
+            re.copyTo(b, rows[2], 0, length);
+            im.copyTo(b, rows[3], 0, length);
+            aRe = rows[0];
+            aIm = rows[1];
+            bRe = rows[2];
+            bIm = rows[3];
+            a = 0;
+            b = 0;
+        }
+        if (summation != Summation.PLAIN) {
+            return compensatedDotConj(aRe, aIm, a, bRe, bIm, b, length);
+        }
+        return dotConj(aRe, aIm, a, bRe, bIm, b, length);
+    }
+
+    /**
+     * dotConj of two columns of a table held in matrix stores, whose elements
+     * are stride apart. The columns are gathered into this thread's scratch
+     * rows, reading heap double stores in place, and summed as rows, so the
+     * table needs no transposed copy.
+     *
+     * @param re real parts of the table
+     * @param im imaginary parts of the table
+     * @param a offset of the first element of the first column
+     * @param b offset of the first element of the second column
+     * @param stride offset step between the elements of a column
+     * @param length number of products to sum
+     * @param summation accumulation of the products
+     * @return the sum of the products
+     */
+    public Complex dotConj(MatrixStore re, MatrixStore im, int a, int b, int stride,
+            int length, Summation summation) {
+        double[][] rows = rows(length);
+        gather(re, a, stride, rows[0], length);
+        gather(im, a, stride, rows[1], length);
+        gather(re, b, stride, rows[2], length);
+        gather(im, b, stride, rows[3], length);
+        if (summation != Summation.PLAIN) {
+            return compensatedDotConj(rows[0], rows[1], 0, rows[2], rows[3], 0, length);
+        }
+        return dotConj(rows[0], rows[1], 0, rows[2], rows[3], 0, length);
+    }
+
+    /**
+     * squaredModulus of a run of values held in matrix stores
+     *
+     * @param re real parts
+     * @param im imaginary parts, null for real values
+     * @param from offset of the first element
+     * @param length number of elements to sum
+     * @param summation accumulation of the squared moduli
+     * @return the sum of the squared moduli
+     */
+    public double squaredModulus(MatrixStore re, MatrixStore im, int from, int length,
+            Summation summation) {
+        double[] x = re.array();
+        double[] y = im == null ? null : im.array();
+        if (x == null || im != null && y == null) {
+            double[][] rows = rows(length);
+            re.copyTo(from, rows[0], 0, length);
+            x = rows[0];
+            if (im != null) {
+                im.copyTo(from, rows[1], 0, length);
+                y = rows[1];
+            }
+            from = 0;
+        }
+        if (summation != Summation.PLAIN) {
+            double[] sum = new double[2];
+            for (int i = from; i < from + length; i++) {
+                Summation.add(sum, x[i] * x[i]);
+                if (y != null) {
+                    Summation.add(sum, y[i] * y[i]);
+                }
+            }
+            return sum[0] + sum[1];
+        }
+        return squaredModulus(x, y, from, length);
+    }
+
+    /*
+     * dotConj with compensated sums of the real and imaginary parts
+     */
+    private static Complex compensatedDotConj(double[] aRe, double[] aIm, int a,
+            double[] bRe, double[] bIm, int b, int length) {
+        double[] re = new double[2];
+        double[] im = new double[2];
+        for (int i = 0; i < length; i++) {
+            double xr = aRe[a + i];
+            double xi = aIm[a + i];
+            double yr = bRe[b + i];
+            double yi = bIm[b + i];
+            Summation.add(re, xr * yr);
+            Summation.add(re, xi * yi);
+            Summation.add(im, xi * yr);
+            Summation.add(im, -xr * yi);
+        }
+        return new Complex(re[0] + re[1], im[0] + im[1]);
+    }
+
+    /*
+     * Copies length values of a store, stride apart, into a row
+     */
+    private static void gather(MatrixStore store, int from, int stride, double[] into,
+            int length) {
+        double[] values = store.array();
+        if (values != null) {
+            for (int i = 0; i < length; i++) {
+                into[i] = values[from + i * stride];
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                into[i] = store.get(from + i * stride);
+            }
+        }
+    }
+
+    /*
+     * This thread's scratch rows, at least length long
+     */
+    private static double[][] rows(int length) {
+        double[][] rows = scratch.get();
+        if (rows[0].length < length) {
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new double[length];
+            }
+        }
+        return rows;
+    }
+
+    /*
+     * The vector kernels, unless they are disabled or the module is missing
+     */
+    private static Kernels choose() {
+        if (Boolean.parseBoolean(System.getProperty("nestedsums.vector", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (Kernels) Class.forName("nestedsums.VectorKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                //fall back to the scalar kernels
+            }
+        }
+        return new ScalarKernels();
+    }
+}
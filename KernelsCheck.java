@@ -0,0 +1,98 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Random;
+
+/**
+ * Checks that VectorKernels and ScalarKernels agree on dotConj,
+ * squaredModulus and sqrtRamp, for lengths that leave a remainder after the
+ * full vectors and offsets that are not aligned to them. The vector kernels
+ * add in another order, so sums may differ in their last few bits, measured
+ * on the sum of the absolute values of the terms; square roots are correctly
+ * rounded and must be equal. Without the jdk.incubator.vector module there
+ * is nothing to compare.
+ *
+ * @author forest
+ */
+public class KernelsCheck {
+
+    static final double ULPS = 16; //units in the last place of the absolute sum
+    static final int[] LENGTHS = {1, 3, 7, 13, 31, 63, 257, 1001};
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Vector and scalar kernels agree to " + ULPS + " ulps");
+    }
+
+    static void run() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            System.out.println("jdk.incubator.vector is not present, no vector kernels to check");
+            return;
+        }
+        Kernels vector;
+        try {
+            vector = (Kernels) Class.forName("nestedsums.VectorKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Vector kernels not loaded", e);
+        }
+        Kernels scalar = new ScalarKernels();
+        Random random = new Random(32);
+        for (int length : LENGTHS) {
+            double[] aRe = values(random, length + 3);
+            double[] aIm = values(random, length + 3);
+            double[] bRe = values(random, length + 5);
+            double[] bIm = values(random, length + 5);
+            Complex v = vector.dotConj(aRe, aIm, 3, bRe, bIm, 5, length);
+            Complex s = scalar.dotConj(aRe, aIm, 3, bRe, bIm, 5, length);
+            double magnitude = 0.0;
+            for (int i = 0; i < length; i++) {
+                magnitude += (Math.abs(aRe[3 + i]) + Math.abs(aIm[3 + i]))
+                        * (Math.abs(bRe[5 + i]) + Math.abs(bIm[5 + i]));
+            }
+            compare("dotConj real part of length " + length, v.real(), s.real(), magnitude);
+            compare("dotConj imaginary part of length " + length, v.imag(), s.imag(), magnitude);
+            double squares = scalar.squaredModulus(aRe, aIm, 3, length);
+            compare("squaredModulus of length " + length,
+                    vector.squaredModulus(aRe, aIm, 3, length), squares, squares);
+            squares = scalar.squaredModulus(bRe, null, 5, length);
+            compare("real squaredModulus of length " + length,
+                    vector.squaredModulus(bRe, null, 5, length), squares, squares);
+            double[] vs = new double[length];
+            double[] ss = new double[length];
+            vector.sqrtRamp(2.5, 0.75, vs, length);
+            scalar.sqrtRamp(2.5, 0.75, ss, length);
+            for (int i = 0; i < length; i++) {
+                Checks.require(vs[i] == ss[i], "sqrtRamp of length " + length + " is " + vs[i]
+                        + " at " + i + ", scalar " + ss[i]);
+            }
+        }
+    }
+
+    /*
+     * Values of both signs and a few orders of magnitude
+     */
+    private static double[] values(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (2.0 * random.nextDouble() - 1.0)
+                    * Math.pow(10.0, 3.0 * random.nextDouble());
+        }
+        return values;
+    }
+
+    private static void compare(String name, double value, double expected, double magnitude) {
+        Checks.require(Math.abs(value - expected) <= ULPS * Math.ulp(magnitude),
+                name + " is " + value + ", scalar " + expected);
+    }
+}
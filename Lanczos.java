@@ -0,0 +1,259 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Lanczos eigen-solver for Hermitian operators. Each step multiplies one
+ * vector by the operator and extends a tridiagonal matrix T whose eigenvalues
+ * (the Ritz values) approximate the extreme eigenvalues of the operator, the
+ * dominant ones first. Every new Lanczos vector is orthogonalised twice
+ * against all previous ones, so no spurious copies of converged eigenvalues
+ * appear; this costs O(steps * n) per step and keeps steps * n values.
+ *
+ * A Ritz value is converged when its residual, |beta * last component of its
+ * eigenvector of T|, is within the tolerance times the largest Ritz value.
+ * The iteration stops when the requested number of dominant eigenvalues have
+ * converged, when the converged eigenvalues account for the known trace to
+ * within the tolerance, or when the Krylov space is exhausted, in which case
+ * every Ritz value is an exact eigenvalue.
+ *
+ * @author forest
+ */
+public class Lanczos {
+
+    private static final int CHECK = 8; //steps between convergence checks
+
+    final HermitianOperator operator; //the matrix
+    final int maxSteps; //largest number of Lanczos vectors
+    final double tolerance; //relative residual of a converged eigenvalue
+    double[] eigenvalues; //converged eigenvalues, largest first
+    int steps; //Lanczos vectors used by the last solve
+
+    /**
+     * @param operator the Hermitian matrix
+     * @param maxSteps largest number of Lanczos vectors, at most the dimension
+     * @param tolerance relative residual of a converged eigenvalue
+     */
+    public Lanczos(HermitianOperator operator, int maxSteps, double tolerance) {
+        this.operator = operator;
+        this.maxSteps = Math.max(1, Math.min(maxSteps, operator.dimension()));
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Finds the dominant eigenvalues
+     *
+     * @param count number of dominant eigenvalues wanted
+     * @param trace the trace of the operator if known, NaN otherwise. Stops
+     *              early once the converged eigenvalues add up to it.
+     * @return the converged eigenvalues, largest first
+     */
+    public double[] solve(int count, double trace) {
+        int n = operator.dimension();
+        double[][] qRe = new double[maxSteps + 1][];
+        double[][] qIm = new double[maxSteps + 1][];
+        double[] alpha = new double[maxSteps];
+        double[] beta = new double[maxSteps];
+        qRe[0] = new double[n];
+        qIm[0] = new double[n];
+        Random random = new Random(n); //reproducible start vector
+        for (int i = 0; i < n; i++) {
+            qRe[0][i] = random.nextGaussian();
+            qIm[0][i] = random.nextGaussian();
+        }
+        scale(qRe[0], qIm[0], 1.0 / norm(qRe[0], qIm[0]));
+        double[] wRe = new double[n];
+        double[] wIm = new double[n];
+        eigenvalues = new double[0];
+        for (int j = 0; j < maxSteps; j++) {
+            operator.apply(qRe[j], qIm[j], wRe, wIm);
+            alpha[j] = dot(qRe[j], qIm[j], wRe, wIm)[0];
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i <= j; i++) {
+                    double[] c = dot(qRe[i], qIm[i], wRe, wIm);
+                    subtract(wRe, wIm, c[0], c[1], qRe[i], qIm[i]);
+                }
+            }
+            beta[j] = norm(wRe, wIm);
+            steps = j + 1;
+            boolean exhausted = beta[j] <= 1e-14 * Math.max(Math.abs(alpha[j]), 1e-300)
+                    || steps == n;
+            if (exhausted || steps == maxSteps || steps % CHECK == 0) {
+                if (converged(alpha, beta, count, trace, exhausted) || exhausted) {
+                    break;
+                }
+            }
+            qRe[j + 1] = wRe.clone();
+            qIm[j + 1] = wIm.clone();
+            scale(qRe[j + 1], qIm[j + 1], 1.0 / beta[j]);
+        }
+        return eigenvalues.clone();
+    }
+
+    /**
+     * @return the converged eigenvalues of the last solve, largest first
+     */
+    public double[] getEigenvalues() {
+        return eigenvalues.clone();
+    }
+
+    /**
+     * @return the number of Lanczos vectors (operator products) used by the
+     *         last solve
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /*
+     * Updates the converged eigenvalues from T of the current size and tests
+     * the stopping rules
+     */
+    private boolean converged(double[] alpha, double[] beta, int count, double trace,
+            boolean exhausted) {
+        int m = steps;
+        double[] d = Arrays.copyOf(alpha, m);
+        double[] e = new double[m];
+        System.arraycopy(beta, 0, e, 1, m - 1);
+        double[] last = new double[m]; //last row of the eigenvectors of T
+        last[m - 1] = 1.0;
+        tridiagonalEigen(d, e, last);
+        //Ritz values largest first, with their residuals
+        Integer[] order = new Integer[m];
+        double largest = 0.0;
+        for (int i = 0; i < m; i++) {
+            order[i] = i;
+            largest = Math.max(largest, Math.abs(d[i]));
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(d[b], d[a]));
+        double[] found = new double[m];
+        int k = 0;
+        int dominant = 0; //leading Ritz values that have all converged
+        double sum = 0.0;
+        for (int i = 0; i < m; i++) {
+            int r = order[i];
+            if (exhausted || Math.abs(beta[m - 1] * last[r]) <= tolerance * largest) {
+                found[k++] = d[r];
+                sum += d[r];
+                if (dominant == i) {
+                    dominant++;
+                }
+            }
+        }
+        eigenvalues = Arrays.copyOf(found, k);
+        return dominant >= count
+                || !Double.isNaN(trace) && Math.abs(trace - sum) <= tolerance * Math.abs(trace);
+    }
+
+    /*
+     * Eigenvalues of the symmetric tridiagonal matrix with diagonal d and
+     * subdiagonal e[1..n-1] by the implicit QL method (after tql2 of EISPACK).
+     * d receives the eigenvalues; z, a row of the identity on entry, receives
+     * the same row of the eigenvector matrix.
+     */
+    static void tridiagonalEigen(double[] d, double[] e, double[] z) {
+        int n = d.length;
+        for (int i = 1; i < n; i++) {
+            e[i - 1] = e[i];
+        }
+        e[n - 1] = 0.0;
+        double f = 0.0;
+        double tst1 = 0.0;
+        double eps = Math.ulp(1.0);
+        for (int l = 0; l < n; l++) {
+            tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+            int m = l;
+            while (m < n - 1 && Math.abs(e[m]) > eps * tst1) {
+                m++;
+            }
+            if (m > l) {
+                do {
+                    double g = d[l];
+                    double p = (d[l + 1] - g) / (2.0 * e[l]);
+                    double r = Math.hypot(p, 1.0);
+                    if (p < 0) {
+                        r = -r;
+                    }
+                    d[l] = e[l] / (p + r);
+                    d[l + 1] = e[l] * (p + r);
+                    double dl1 = d[l + 1];
+                    double h = g - d[l];
+                    for (int i = l + 2; i < n; i++) {
+                        d[i] -= h;
+                    }
+                    f += h;
+                    p = d[m];
+                    double c = 1.0;
+                    double c2 = c;
+                    double c3 = c;
+                    double el1 = e[l + 1];
+                    double s = 0.0;
+                    double s2 = 0.0;
+                    for (int i = m - 1; i >= l; i--) {
+                        c3 = c2;
+                        c2 = c;
+                        s2 = s;
+                        g = c * e[i];
+                        h = c * p;
+                        r = Math.hypot(p, e[i]);
+                        e[i + 1] = s * r;
+                        s = e[i] / r;
+                        c = p / r;
+                        p = c * d[i] - s * g;
+                        d[i + 1] = h + s * (c * g + s * d[i]);
+                        h = z[i + 1];
+                        z[i + 1] = s * z[i] + c * h;
+                        z[i] = c * z[i] - s * h;
+                    }
+                    p = -s * s2 * c3 * el1 * e[l] / dl1;
+                    e[l] = s * p;
+                    d[l] = c * p;
+                } while (Math.abs(e[l]) > eps * tst1);
+            }
+            d[l] += f;
+            e[l] = 0.0;
+        }
+    }
+
+    /*
+     * {re, im} of the inner product a^H b
+     */
+    private static double[] dot(double[] aRe, double[] aIm, double[] bRe, double[] bIm) {
+        Complex c = Kernels.getInstance().dotConj(bRe, bIm, 0, aRe, aIm, 0, aRe.length);
+        return new double[]{c.real(), c.imag()};
+    }
+
+    /*
+     * w -= (cRe + i cIm) q
+     */
+    private static void subtract(double[] wRe, double[] wIm, double cRe, double cIm,
+            double[] qRe, double[] qIm) {
+        for (int i = 0; i < wRe.length; i++) {
+            wRe[i] -= cRe * qRe[i] - cIm * qIm[i];
+            wIm[i] -= cRe * qIm[i] + cIm * qRe[i];
+        }
+    }
+
+    private static double norm(double[] re, double[] im) {
+        return Math.sqrt(Kernels.getInstance().squaredModulus(re, im, 0, re.length));
+    }
+
+    private static void scale(double[] re, double[] im, double factor) {
+        for (int i = 0; i < re.length; i++) {
+            re[i] *= factor;
+            im[i] *= factor;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the eigen-solvers on matrices with known spectra: the tridiagonal
+ * QL step (Lanczos.tridiagonalEigen) on the second difference matrix, the
+ * Lanczos solver on a dense Hermitian matrix U D U^H, and the Gram operator
+ * M M^H of VonNeumannEntropy on M = U S, whose eigenvalues are the squared
+ * singular values S. U is a complex Householder reflection, so it is unitary
+ * and every matrix is full. Finally the eigenvalues of a run's reduced
+ * density operator must give the same Tr(ro squared) as the linear entropy.
+ *
+ * @author forest
+ */
+public class LanczosCheck {
+
+    static final double TOLERANCE = 1e-10; //error relative to the largest eigenvalue
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Lanczos, tql2 and Gram spectra agree to " + TOLERANCE);
+    }
+
+    static void run() {
+        secondDifference(12);
+        dense(40);
+        gram(30, 20);
+        entropy(new double[]{50.0, 1.0, 1.0, 4.0, 4.0, 0.0, 1, 0.25});
+    }
+
+    /*
+     * The n x n matrix with 2 on the diagonal and -1 beside it has the
+     * eigenvalues 2 - 2 cos(k pi / (n + 1)), and the last component of the
+     * k-th unit eigenvector is sqrt(2 / (n + 1)) sin(n k pi / (n + 1)).
+     */
+    private static void secondDifference(int n) {
+        double[] d = new double[n];
+        double[] e = new double[n];
+        Arrays.fill(d, 2.0);
+        Arrays.fill(e, 1, n, -1.0);
+        double[] last = new double[n];
+        last[n - 1] = 1.0;
+        Lanczos.tridiagonalEigen(d, e, last);
+        boolean[] matched = new boolean[n + 1];
+        for (int i = 0; i < n; i++) {
+            int k = (int) Math.round(Math.acos(1.0 - d[i] / 2.0) * (n + 1) / Math.PI);
+            Checks.require(k >= 1 && k <= n && !matched[k], "tql2 eigenvalue " + d[i]
+                    + " is not a new 2 - 2 cos(k pi / " + (n + 1) + ")");
+            matched[k] = true;
+            double angle = k * Math.PI / (n + 1);
+            double component = Math.sqrt(2.0 / (n + 1)) * Math.sin(n * angle);
+            Checks.require(Math.abs(d[i] - (2.0 - 2.0 * Math.cos(angle))) <= TOLERANCE,
+                    "tql2 eigenvalue " + d[i] + " for k = " + k);
+            Checks.require(Math.abs(Math.abs(last[i]) - Math.abs(component)) <= TOLERANCE,
+                    "tql2 eigenvector component " + last[i] + " for k = " + k
+                    + ", expected +-" + component);
+        }
+    }
+
+    /*
+     * A = U D U^H with eigenvalues 0.6^k: the solver must find them all,
+     * largest first, and stop early with the dominant ones given the trace
+     */
+    private static void dense(int n) {
+        double[] spectrum = new double[n];
+        double trace = 0.0;
+        for (int k = 0; k < n; k++) {
+            spectrum[k] = Math.pow(0.6, k);
+            trace += spectrum[k];
+        }
+        double[][] u = householder(n, new Random(37));
+        double[][] a = new double[2 * n][n]; //rows re then im of A
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                for (int k = 0; k < n; k++) {
+                    //U(i,k) D(k) conj(U(j,k))
+                    double re = u[i][k] * u[j][k] + u[n + i][k] * u[n + j][k];
+                    double im = u[n + i][k] * u[j][k] - u[i][k] * u[n + j][k];
+                    a[i][j] += spectrum[k] * re;
+                    a[n + i][j] += spectrum[k] * im;
+                }
+            }
+        }
+        HermitianOperator operator = new VonNeumannEntropy.Dense(table(a, n, n), n);
+        double[] found = new Lanczos(operator, n, 1e-13).solve(n, Double.NaN);
+        Checks.require(found.length == n, "Lanczos found " + found.length + " of "
+                + n + " eigenvalues");
+        compare("dense", found, spectrum, n);
+        Lanczos early = new Lanczos(operator, n, TOLERANCE);
+        found = early.solve(n, trace);
+        double sum = 0.0;
+        for (double lambda : found) {
+            sum += lambda;
+        }
+        Checks.require(Math.abs(sum - trace) <= TOLERANCE * trace,
+                "Lanczos stopped with " + sum + " of the trace " + trace);
+        compare("dense with trace", found, spectrum, found.length);
+    }
+
+    /*
+     * M = U S for a rows x cols diagonal S of singular values 0.8^k, so the
+     * Gram operator M M^H has the eigenvalues 0.8^2k and rows - cols zeros.
+     * Its products must also equal those with the explicit M M^H.
+     */
+    private static void gram(int rows, int cols) {
+        double[][] u = householder(rows, new Random(38));
+        double[][] m = new double[2 * rows][cols];
+        double[] spectrum = new double[cols];
+        for (int k = 0; k < cols; k++) {
+            double s = Math.pow(0.8, k);
+            spectrum[k] = s * s;
+            for (int i = 0; i < rows; i++) {
+                m[i][k] = u[i][k] * s;
+                m[rows + i][k] = u[rows + i][k] * s;
+            }
+        }
+        VonNeumannEntropy.Gram gram = new VonNeumannEntropy.Gram(table(m, rows, cols), rows, cols);
+        Random random = new Random(39);
+        double[] xRe = new double[rows];
+        double[] xIm = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            xRe[i] = random.nextGaussian();
+            xIm[i] = random.nextGaussian();
+        }
+        double[] yRe = new double[rows];
+        double[] yIm = new double[rows];
+        gram.apply(xRe, xIm, yRe, yIm);
+        for (int i = 0; i < rows; i++) {
+            double re = 0.0;
+            double im = 0.0;
+            for (int j = 0; j < rows; j++) {
+                //(M M^H)(i,j) = Sum[M(i,l) conj(M(j,l))]
+                for (int l = 0; l < cols; l++) {
+                    double aRe = m[i][l] * m[j][l] + m[rows + i][l] * m[rows + j][l];
+                    double aIm = m[rows + i][l] * m[j][l] - m[i][l] * m[rows + j][l];
+                    re += aRe * xRe[j] - aIm * xIm[j];
+                    im += aRe * xIm[j] + aIm * xRe[j];
+                }
+            }
+            Checks.require(Math.abs(yRe[i] - re) + Math.abs(yIm[i] - im) <= TOLERANCE * rows,
+                    "Gram product row " + i + " is " + yRe[i] + " + " + yIm[i]
+                    + "i, expected " + re + " + " + im + "i");
+        }
+        double[] found = new Lanczos(gram, rows, 1e-13).solve(cols, Double.NaN);
+        compare("Gram", found, spectrum, cols);
+    }
+
+    /*
+     * For the reduced density operator of a run, Sum[lambda^2] / Tr(ro)^2 is
+     * Tr(ro squared) of the normalised state, which is 1 minus its linear
+     * entropy
+     */
+    private static void entropy(double[] params) {
+        EntropyParameters ep = new EntropyParameters(params);
+        BSingleton bs = BSingleton.getInstance();
+        bs.init(ep);
+        try {
+            for (int t = 0; t < ep.steps(); t++) {
+                double time = t * ep.interval;
+                VonNeumannEntropy vn = new VonNeumannEntropy(time, ep);
+                vn.calculate();
+                double squares = 0.0;
+                for (double lambda : vn.getEigenvalues()) {
+                    squares += lambda * lambda;
+                }
+                double purity = squares / (vn.trace * vn.trace);
+                double linear = new LinearEntropy(time, ep).calculate();
+                Checks.require(Math.abs(1.0 - purity - linear) <= 1e-8,
+                        "at time " + time + " the eigenvalues give a linear entropy of "
+                        + (1.0 - purity) + ", the F table " + linear);
+            }
+        } finally {
+            bs.release();
+        }
+    }
+
+    private static void compare(String name, double[] found, double[] spectrum, int count) {
+        for (int k = 0; k < count; k++) {
+            Checks.require(Math.abs(found[k] - spectrum[k]) <= TOLERANCE * spectrum[0],
+                    name + " eigenvalue " + k + " is " + found[k] + ", expected " + spectrum[k]);
+        }
+    }
+
+    /*
+     * The n x n unitary I - 2 v v^H / (v^H v) for a random complex v, as
+     * rows re then im
+     */
+    private static double[][] householder(int n, Random random) {
+        double[] vRe = new double[n];
+        double[] vIm = new double[n];
+        double norm = 0.0;
+        for (int i = 0; i < n; i++) {
+            vRe[i] = random.nextGaussian();
+            vIm[i] = random.nextGaussian();
+            norm += vRe[i] * vRe[i] + vIm[i] * vIm[i];
+        }
+        double[][] u = new double[2 * n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                //v(i) conj(v(j))
+                double re = vRe[i] * vRe[j] + vIm[i] * vIm[j];
+                double im = vIm[i] * vRe[j] - vRe[i] * vIm[j];
+                u[i][j] = (i == j ? 1.0 : 0.0) - 2.0 * re / norm;
+                u[n + i][j] = -2.0 * im / norm;
+            }
+        }
+        return u;
+    }
+
+    /*
+     * A filled complex table of a matrix given as rows re then im
+     */
+    private static MemoizedSequence table(double[][] a, int rows, int cols) {
+        MemoizedSequence table = new MemoizedSequence(
+                indices -> new Complex(a[indices[0]][indices[1]], a[rows + indices[0]][indices[1]]),
+                new int[]{rows, cols}, true);
+        table.fill();
+        return table;
+    }
+}
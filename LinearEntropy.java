@@ -37,30 +37,38 @@ public class LinearEntropy {
     }
 
     /**
-     * Encapsulated Linear Entropy constructor
+     * Encapsulated Linear Entropy constructor, for field b if the parameters
+     * ask for field b only and for field a otherwise
      */
     LinearEntropy(double time, EntropyParameters ep) {
         this.time = time;
-        this.max = ep.alpha2sq * ep.alpha1sq;
-        if (this.max < 16) {
-            this.max = 16;
-        }
-        this.fl = new F_ab(time, ep);
+        this.max = ep.max();
+        this.fl = new F_ab(time, ep, ep.fields == FieldMode.B ? FieldMode.B : FieldMode.A);
         this.tTerms = new TrRoSquared(max, fl);
     }
 
+    /**
+     * Encapsulated Linear Entropy constructor for either field. Both fields of
+     * a time share the cached B table.
+     * @param field A for the reduced state of field a, B for field b
+     */
+    LinearEntropy(double time, EntropyParameters ep, FieldMode field) {
+        this(time, ep.max(), new F_ab(time, ep, field));
+    }
+
     /**
      * Calculates the linear entropy for a set time and maximum number of terms
-     * Optimized with memoization
+     * Optimized with memoization. The F and Tr(ro_squared) tables are released
+     * once the result is known.
      * @return the value of linear entropy for a specific time
      */
     public double calculate() {
         if (result != null && result != 0.0) {
             return result;
         }
-        this.tTerms.calculate();
-        Series sum = new Series(tTerms, max, 2);
-        result = 1.0 - sum.calculate();
+        result = 1.0 - tTerms.calculate();
+        tTerms.terms.release();
+        fl.terms.release();
         return result;
     }
 }
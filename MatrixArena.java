@@ -0,0 +1,188 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates the matrix stores of a run and frees them together when the run
+ * closes it. A heap arena hands out HeapMatrixStores and has nothing to free.
+ * An off-heap arena hands out OffHeapMatrixStores in native memory, so large
+ * B and F tables put no pressure on the garbage collector; it needs the JVM to
+ * be started with --add-modules jdk.incubator.foreign on JDK 17, the only
+ * JDK it is built on, and falls back to the heap without it.
+ *
+ * Every store of an arena has the arena's precision, doubles unless floats
+ * are asked for.
+ *
+ * The system property nestedsums.offheap chooses the arena of a run: true or
+ * false forces it, and the default, auto, goes off-heap for runs whose tables
+ * take at least OFF_HEAP_THRESHOLD bytes each.
+ *
+ * @author forest
+ */
+public class MatrixArena implements AutoCloseable {
+
+    static final long OFF_HEAP_THRESHOLD = 1L << 23; //bytes in a table, 8 MB
+    private static final MatrixArena HEAP = new MatrixArena(false, Precision.DOUBLE);
+    static final boolean OFF_HEAP = available(); //whether off-heap stores can be made
+
+    private final boolean offHeap; //whether stores are in native memory
+    private final Precision precision; //precision of the stored values
+    private final Set<MatrixStore> open = ConcurrentHashMap.newKeySet(); //stores
+                                                  // to free when the arena closes
+    private final AtomicLong peak = new AtomicLong(); //most off-heap bytes open
+                                                      // at once
+
+    private MatrixArena(boolean offHeap, Precision precision) {
+        this.offHeap = offHeap;
+        this.precision = precision;
+    }
+
+    /**
+     * @return the arena of heap stores of doubles, which is never closed
+     */
+    public static MatrixArena heap() {
+        return HEAP;
+    }
+
+    /**
+     * @param precision the precision of the stored values
+     * @return an arena of heap stores
+     */
+    public static MatrixArena heap(Precision precision) {
+        return precision == Precision.DOUBLE ? HEAP : new MatrixArena(false, precision);
+    }
+
+    /**
+     * @param precision the precision of the stored values
+     * @return a new off-heap arena, or a heap arena if the Foreign Memory API
+     *         or OffHeapMatrixStore is not available
+     */
+    public static MatrixArena offHeap(Precision precision) {
+        if (OFF_HEAP) {
+            return new MatrixArena(true, precision);
+        }
+        return heap(precision);
+    }
+
+    /**
+     * Arena for a run, chosen by the nestedsums.offheap property
+     *
+     * @param values the number of values in each of the largest tables
+     * @param precision the precision of the stored values
+     * @return a new off-heap arena or a heap arena
+     */
+    public static MatrixArena forRun(long values, Precision precision) {
+        String choice = System.getProperty("nestedsums.offheap", "auto");
+        boolean large = "auto".equals(choice) && values * precision.bytes >= OFF_HEAP_THRESHOLD;
+        return large || Boolean.parseBoolean(choice) ? offHeap(precision) : heap(precision);
+    }
+
+    /**
+     * @param size the number of values to store
+     * @return a new store holding zeros
+     */
+    public MatrixStore allocate(int size) {
+        if (!offHeap) {
+            return precision == Precision.FLOAT
+                    ? new FloatMatrixStore(size) : new HeapMatrixStore(size);
+        }
+        MatrixStore store;
+        try {
+            store = (MatrixStore) Class.forName("nestedsums.OffHeapMatrixStore")
+                    .getDeclaredConstructor(int.class, Precision.class, MatrixArena.class)
+                    .newInstance(size, precision, this);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Off-heap storage unavailable", e);
+        }
+        open.add(store);
+        peak.accumulateAndGet(bytes(), Math::max);
+        return store;
+    }
+
+    /**
+     * @return true if the stores of this arena are in native memory
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @return the precision of the stored values
+     */
+    public Precision precision() {
+        return precision;
+    }
+
+    /**
+     * @return the number of off-heap bytes held by stores that are still open
+     */
+    public long bytes() {
+        long bytes = 0;
+        for (MatrixStore store : open) {
+            bytes += (long) store.size() * store.precision().bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the largest number of off-heap bytes held by open stores at
+     *         any time
+     */
+    public long peakBytes() {
+        return peak.get();
+    }
+
+    /*
+     * Forgets a store that has been released on its own
+     */
+    void released(MatrixStore store) {
+        open.remove(store);
+    }
+
+    /**
+     * Frees every store of the arena that has not been released yet
+     */
+    @Override
+    public void close() {
+        for (MatrixStore store : open) {
+            store.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (offHeap ? "off-heap arena, " + bytes() + " bytes open" : "heap arena")
+                + ", " + precision;
+    }
+
+    /*
+     * The jdk.incubator.foreign module is present and OffHeapMatrixStore was
+     * built, which only happens on JDK 17. The class is not initialised, so
+     * it is found without the module.
+     */
+    private static boolean available() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.foreign").isPresent()) {
+            return false;
+        }
+        try {
+            Class.forName("nestedsums.OffHeapMatrixStore", false,
+                    MatrixArena.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Flat storage for the doubles of a coefficient table, addressed by offset.
+ * HeapMatrixStore keeps them in a double array and FloatMatrixStore in a float
+ * array; OffHeapMatrixStore keeps them in native memory outside the garbage
+ * collected heap, as doubles or floats. Values are always read and written as
+ * doubles. Stores are allocated
+ * by a MatrixArena, which frees any that are still open when it closes.
+ *
+ * New stores hold zeros. Reads and writes of different offsets may come from
+ * different threads; publishing values between threads is up to the caller.
+ *
+ * @author forest
+ */
+public interface MatrixStore {
+
+    /**
+     * @return the number of doubles stored
+     */
+    public int size();
+
+    /**
+     * @return the precision of the stored values
+     */
+    public Precision precision();
+
+    /**
+     * @param offset position of the value
+     * @return the stored value
+     */
+    public double get(int offset);
+
+    /**
+     * @param offset position of the value
+     * @param value the value to store
+     */
+    public void set(int offset, double value);
+
+    /**
+     * Copies a run of values into an array
+     *
+     * @param offset position of the first value
+     * @param into the array receiving the values
+     * @param start position in the array of the first value
+     * @param length number of values to copy
+     */
+    public void copyTo(int offset, double[] into, int start, int length);
+
+    /**
+     * @return the backing array of a heap store, null if the values are not
+     *         on the heap
+     */
+    public double[] array();
+
+    /**
+     * Frees the storage. A released store must not be used again.
+     */
+    public void release();
+}
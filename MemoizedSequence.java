@@ -0,0 +1,508 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoizes the terms of another sequence in a dense table of doubles. Whether
+ * a term has been computed is tracked by a separate bitmap, so terms that are
+ * legitimately zero are stored like any other value. Complex sequences store
+ * their real and imaginary parts in two parallel stores instead of Complex
+ * objects. The stores come from a MatrixArena, on the heap unless another
+ * arena is given.
+ *
+ * Terms outside the table are computed on every request and never stored.
+ * Hit, miss and fill counters show how effective the table is: a hit is a term
+ * served from the table, a miss is a term computed by getTerm and a fill is a
+ * term computed by fill or stored by put.
+ *
+ * A table can be extended to a larger shape, keeping the terms it holds, so
+ * a larger truncation only computes the new border terms.
+ *
+ * A concurrent table may be filled and read from many threads at once, and
+ * can fill its rows in parallel. A term computed by two threads at the same
+ * time is computed twice, which is harmless because sequence terms do not
+ * depend on evaluation order.
+ *
+ * @author forest
+ */
+public class MemoizedSequence implements DoubleSequence {
+
+    private final Sequence seriesterm; //the definition of the memoized terms
+    private int[] shape; //number of stored terms in each dimension
+    private int[] strides; //flat offset step for each dimension
+    private final boolean complex; //whether imaginary parts are stored
+    private final boolean concurrent; //whether many threads share the table
+    private final MatrixArena arena; //allocates the stores of the values
+    MatrixStore re; //real parts, flattened so the last index is fastest
+    MatrixStore im; //imaginary parts, null for real sequences
+    private long[] computed; //bitmap of stored terms for single thread use
+    private AtomicLongArray sharedComputed; //bitmap of stored terms when shared
+    private long hits, misses, fills; //counters for single thread use
+    private LongAdder sharedHits, sharedMisses, sharedFills; //shared counters
+
+    /**
+     * Single threaded memoized sequence
+     *
+     * @param terms the sequence definition, to generate the stored values
+     * @param shape the number of terms to store in each dimension
+     * @param complex true if terms are Complex and both parts must be stored
+     */
+    public MemoizedSequence(Sequence terms, int[] shape, boolean complex) {
+        this(terms, shape, complex, false);
+    }
+
+    /**
+     * Memoized sequence, optionally safe for concurrent lookup and fill
+     *
+     * @param terms the sequence definition, to generate the stored values
+     * @param shape the number of terms to store in each dimension
+     * @param complex true if terms are Complex and both parts must be stored
+     * @param concurrent true if the table is shared between threads
+     */
+    public MemoizedSequence(Sequence terms, int[] shape, boolean complex, boolean concurrent) {
+        this(terms, shape, complex, concurrent, MatrixArena.heap());
+    }
+
+    /**
+     * Memoized sequence whose values are stored by an arena, e.g. off-heap
+     *
+     * @param terms the sequence definition, to generate the stored values
+     * @param shape the number of terms to store in each dimension
+     * @param complex true if terms are Complex and both parts must be stored
+     * @param concurrent true if the table is shared between threads
+     * @param arena allocates the stores of the values
+     */
+    public MemoizedSequence(Sequence terms, int[] shape, boolean complex, boolean concurrent,
+            MatrixArena arena) {
+        this.seriesterm = terms;
+        this.complex = complex;
+        this.concurrent = concurrent;
+        this.arena = arena;
+        if (concurrent) {
+            sharedHits = new LongAdder();
+            sharedMisses = new LongAdder();
+            sharedFills = new LongAdder();
+        }
+        allocate(shape);
+    }
+
+    /*
+     * Allocates empty stores and bitmap for a shape
+     */
+    private void allocate(int[] shape) {
+        int[] strides = new int[shape.length];
+        long size = 1;
+        for (int k = shape.length - 1; k >= 0; k--) {
+            strides[k] = (int) size;
+            size *= shape[k];
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Table too large: " + Arrays.toString(shape));
+        }
+        int words = (int) ((size + 63) >>> 6);
+        if (concurrent) {
+            sharedComputed = new AtomicLongArray(words);
+        } else {
+            computed = new long[words];
+        }
+        re = arena.allocate((int) size);
+        im = complex ? arena.allocate((int) size) : null;
+        this.shape = shape.clone();
+        this.strides = strides;
+    }
+
+    /**
+     * @param indices Index numbers of a term in the sequence
+     * @return the stored term, or the computed term if it is not stored yet
+     */
+    @Override
+    public Number getTerm(int[] indices) throws IndexOutOfBoundsException {
+        int offset = offset(indices);
+        if (offset >= 0 && isComputed(offset)) {
+            count(0);
+            return complex ? new Complex(re.get(offset), im.get(offset)) : (Number) re.get(offset);
+        }
+        count(1);
+        Number value = seriesterm.getTerm(indices);
+        if (offset >= 0) {
+            store(offset, value);
+        }
+        return value;
+    }
+
+    /**
+     * Real value of a term, the modulus for complex sequences, without boxing
+     * when the term is already stored
+     *
+     * @param indices Index numbers of a term in the sequence
+     * @return the value of the term as summed by Series
+     */
+    @Override
+    public double getDouble(int[] indices) {
+        int offset = offset(indices);
+        if (offset >= 0 && isComputed(offset)) {
+            count(0);
+            return complex ? Math.hypot(re.get(offset), im.get(offset)) : re.get(offset);
+        }
+        return getTerm(indices).doubleValue();
+    }
+
+    /**
+     * Real part of a term (the value of a real term) without boxing when the
+     * term is already stored
+     *
+     * @param indices Index numbers of a term in the sequence
+     * @return the real part of the term
+     */
+    public double real(int[] indices) {
+        int offset = offset(indices);
+        if (offset >= 0 && isComputed(offset)) {
+            count(0);
+            return re.get(offset);
+        }
+        Number value = getTerm(indices);
+        return complex ? ((Complex) value).real() : value.doubleValue();
+    }
+
+    /**
+     * Imaginary part of a term without boxing when the term is already stored
+     *
+     * @param indices Index numbers of a term in the sequence
+     * @return the imaginary part of the term, 0 for real sequences
+     */
+    public double imag(int[] indices) {
+        if (!complex) {
+            return 0.0;
+        }
+        int offset = offset(indices);
+        if (offset >= 0 && isComputed(offset)) {
+            count(0);
+            return im.get(offset);
+        }
+        return ((Complex) getTerm(indices)).imag();
+    }
+
+    /**
+     * Stores a term computed elsewhere, e.g. the mirror image of a symmetric
+     * term. Terms outside the table are ignored.
+     *
+     * @param indices Index numbers of the term
+     * @param real real part (or value) of the term
+     * @param imag imaginary part of the term, ignored for real sequences
+     */
+    public void put(int[] indices, double real, double imag) {
+        int offset = offset(indices);
+        if (offset >= 0) {
+            re.set(offset, real);
+            if (complex) {
+                im.set(offset, imag);
+            }
+            mark(offset);
+            count(2);
+        }
+    }
+
+    /**
+     * @param indices Index numbers of a term in the sequence
+     * @return true if the term is stored in the table
+     */
+    public boolean isComputed(int[] indices) {
+        int offset = offset(indices);
+        return offset >= 0 && isComputed(offset);
+    }
+
+    /**
+     * Computes and stores every term of the table that is not stored yet
+     */
+    public void fill() {
+        fill(new int[shape.length], shape);
+    }
+
+    /**
+     * Computes and stores every term of a box of the table that is not stored
+     * yet.
+     *
+     * @param from the first indices of the box, inclusive
+     * @param to the last indices of the box, exclusive
+     */
+    public void fill(int[] from, int[] to) {
+        int[] upper = clip(from, to);
+        if (upper != null) {
+            for (int row = from[0]; row < upper[0]; row++) {
+                fillRow(row, from, upper);
+            }
+        }
+    }
+
+    /**
+     * Computes and stores every term of a box of the table that is not stored
+     * yet, filling its rows in parallel in the ExecutionService pool. Only a
+     * concurrent table can be filled in parallel, and the term definition must
+     * be safe to call from several threads.
+     *
+     * @param from the first indices of the box, inclusive
+     * @param to the last indices of the box, exclusive
+     */
+    public void parallelFill(int[] from, int[] to) {
+        if (!concurrent) {
+            throw new IllegalStateException("Table is not concurrent");
+        }
+        int[] upper = clip(from, to);
+        if (upper != null) {
+            ExecutionService.getInstance().parallelFor(from[0], upper[0],
+                    row -> fillRow(row, from, upper));
+        }
+    }
+
+    /*
+     * The box upper bounds limited to the table, null if nothing is to fill
+     */
+    private int[] clip(int[] from, int[] to) {
+        if (re == null || shape.length == 0) {
+            return null;
+        }
+        int[] upper = new int[shape.length];
+        for (int k = 0; k < shape.length; k++) {
+            upper[k] = Math.min(to[k], shape[k]);
+            if (from[k] >= upper[k]) {
+                return null;
+            }
+        }
+        return upper;
+    }
+
+    /*
+     * Fills the part of the box with the given first index
+     */
+    private void fillRow(int row, int[] from, int[] upper) {
+        int[] indices = from.clone();
+        indices[0] = row;
+        int last = indices.length - 1;
+        while (true) {
+            int offset = offset(indices);
+            if (!isComputed(offset)) {
+                store(offset, seriesterm.getTerm(indices));
+                count(2);
+            }
+            int k = last;
+            while (k > 0 && ++indices[k] >= upper[k]) {
+                indices[k] = from[k];
+                k--;
+            }
+            if (k == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Grows the table to a larger shape, keeping every stored term, so that
+     * only the terms of the new border are computed by later fills. A
+     * released table is allocated afresh and empty. The table must not be
+     * read or filled by other threads while it grows.
+     *
+     * @param shape the new number of terms in each dimension, no smaller than
+     *              the current one
+     */
+    public synchronized void extend(int[] shape) {
+        int[] old = this.shape;
+        for (int k = 0; k < old.length; k++) {
+            if (shape[k] < old[k]) {
+                throw new IllegalArgumentException("Tables only grow: "
+                        + Arrays.toString(old) + " to " + Arrays.toString(shape));
+            }
+        }
+        if (Arrays.equals(old, shape) && re != null) {
+            return;
+        }
+        MatrixStore oldRe = re;
+        MatrixStore oldIm = im;
+        long[] oldComputed = computed;
+        AtomicLongArray oldShared = sharedComputed;
+        int[] oldStrides = strides;
+        allocate(shape);
+        if (oldRe == null) {
+            return;
+        }
+        int[] indices = new int[old.length];
+        int size = oldRe.size();
+        for (int from = 0; from < size; from++) {
+            long bit = 1L << from;
+            long word = concurrent ? oldShared.get(from >>> 6) : oldComputed[from >>> 6];
+            if ((word & bit) != 0) {
+                int rest = from;
+                for (int k = 0; k < old.length; k++) {
+                    indices[k] = rest / oldStrides[k];
+                    rest %= oldStrides[k];
+                }
+                int to = offset(indices);
+                re.set(to, oldRe.get(from));
+                if (complex) {
+                    im.set(to, oldIm.get(from));
+                }
+                mark(to);
+            }
+        }
+        oldRe.release();
+        if (oldIm != null) {
+            oldIm.release();
+        }
+    }
+
+    /**
+     * Multiplies every stored term by a factor, e.g. to renormalise the table
+     * after its sequence is rescaled. The table must not be filled meanwhile.
+     *
+     * @param factor the factor of every stored value
+     */
+    public void scale(double factor) {
+        MatrixStore real = re;
+        MatrixStore imag = im;
+        if (real == null) {
+            return;
+        }
+        for (int offset = 0; offset < real.size(); offset++) {
+            if (isComputed(offset)) {
+                real.set(offset, real.get(offset) * factor);
+                if (imag != null) {
+                    imag.set(offset, imag.get(offset) * factor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the table. Later requests compute every term, as misses.
+     */
+    public void release() {
+        MatrixStore real = re;
+        MatrixStore imag = im;
+        re = null;
+        im = null;
+        if (real != null) {
+            real.release();
+        }
+        if (imag != null) {
+            imag.release();
+        }
+    }
+
+    /**
+     * @return the number of terms stored in each dimension
+     */
+    public int[] shape() {
+        return shape.clone();
+    }
+
+    /**
+     * @return the number of terms served from the table
+     */
+    public long hits() {
+        return concurrent ? sharedHits.sum() : hits;
+    }
+
+    /**
+     * @return the number of terms computed on request by getTerm
+     */
+    public long misses() {
+        return concurrent ? sharedMisses.sum() : misses;
+    }
+
+    /**
+     * @return the number of terms computed by fill or stored by put
+     */
+    public long fills() {
+        return concurrent ? sharedFills.sum() : fills;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoizedSequence" + Arrays.toString(shape)
+                + (re == null ? " released" : "")
+                + " hits=" + hits() + " misses=" + misses() + " fills=" + fills();
+    }
+
+    /*
+     * Flat position of a term in the table, -1 if it is not stored here
+     */
+    int offset(int[] indices) {
+        if (re == null || indices.length != shape.length) {
+            return -1;
+        }
+        int offset = 0;
+        for (int k = 0; k < indices.length; k++) {
+            if (indices[k] < 0 || indices[k] >= shape[k]) {
+                return -1;
+            }
+            offset += indices[k] * strides[k];
+        }
+        return offset;
+    }
+
+    /*
+     * Stores a term unless the table has been released meanwhile
+     */
+    private void store(int offset, Number value) {
+        MatrixStore real = re;
+        MatrixStore imag = im;
+        if (real == null) {
+            return;
+        }
+        if (complex) {
+            Complex c = (Complex) value;
+            real.set(offset, c.real());
+            imag.set(offset, c.imag());
+        } else {
+            real.set(offset, value.doubleValue());
+        }
+        mark(offset);
+    }
+
+    private boolean isComputed(int offset) {
+        long bit = 1L << offset;
+        return concurrent
+                ? (sharedComputed.get(offset >>> 6) & bit) != 0
+                : (computed[offset >>> 6] & bit) != 0;
+    }
+
+    /*
+     * Sets the computed bit after the value is written, so a thread that sees
+     * the bit also sees the value
+     */
+    private void mark(int offset) {
+        long bit = 1L << offset;
+        if (concurrent) {
+            sharedComputed.getAndUpdate(offset >>> 6, w -> w | bit);
+        } else {
+            computed[offset >>> 6] |= bit;
+        }
+    }
+
+    /*
+     * Counts a hit (0), miss (1) or fill (2)
+     */
+    private void count(int kind) {
+        if (concurrent) {
+            (kind == 0 ? sharedHits : kind == 1 ? sharedMisses : sharedFills).increment();
+        } else if (kind == 0) {
+            hits++;
+        } else if (kind == 1) {
+            misses++;
+        } else {
+            fills++;
+        }
+    }
+}
@@ -17,13 +17,14 @@ package nestedsums;
  *
  * @author forest
  */
-public class N_0 implements Sequence {
+public class N_0 implements DoubleSequence {
 
     double time; //time at which the state-reductive measurement is made
     int max; //the maximum number of terms in the series to calculate any value
     Q_ab qt; //QTilda sequence for system under examination
     C_0 ct; //C_0 sequence for the time (see above) examined
-    double[][] terms; //the individual series term terms, not the final value
+    MemoizedSequence terms; //the individual series terms, not the final value
+    Series sum; //the series of the result, kept to extend it
     Double result; //the final value of the series
 
     /**
@@ -38,6 +39,7 @@ public class N_0 implements Sequence {
         this.max = max;
         this.qt = qt;
         this.ct = ct;
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, false);
     }
 
     /**
@@ -47,12 +49,10 @@ public class N_0 implements Sequence {
      */
     public N_0(double time, EntropyParameters ep) {
         this.time = time;
-        this.max = ep.alpha2sq * ep.alpha1sq;
-        if (this.max < 16) {
-            this.max = 16;
-        }
+        this.max = ep.max();
         this.qt = Q_ab.getInstance();
         this.ct = new C_0(time, ep);
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, false);
     }
 
     /**
@@ -63,14 +63,26 @@ public class N_0 implements Sequence {
         if (indices.length > 2) {
             throw new IndexOutOfBoundsException();
         }
-        //if the term is already calculated, fetch stored value
-        if (terms != null && terms[indices[0]][indices[1]] != 0.0) {
-            if (indices[1] < this.terms[0].length && indices[0] < this.terms.length) {
-                return terms[indices[0]][indices[1]];
-            }
+        return terms.getTerm(indices);
+    }
+
+    /**
+     * Memoized term without boxing
+     */
+    @Override
+    public double getDouble(int[] indices) throws IndexOutOfBoundsException {
+        if (indices.length > 2) {
+            throw new IndexOutOfBoundsException();
         }
-        //if the term is not already calculated, calculate it
-        double cSquared = ct.getTerm(indices).mod() * ct.getTerm(indices).conj().mod();
+        return terms.getDouble(indices);
+    }
+
+    /*
+     * Calculates an N_0 series term from the memoized Q and C0 coefficients
+     */
+    private Number calculateTerm(int[] indices) {
+        Complex c = ct.getTerm(indices);
+        double cSquared = c.mod() * c.conj().mod();
         return Math.pow(Math.abs(qt.getTerm(indices).doubleValue()), 2)
                 * Math.abs(cSquared);
     }
@@ -79,13 +91,37 @@ public class N_0 implements Sequence {
      * Calculates the N_0 coefficient for a preset time and preset maximum 
      * number of sum terms. Unlike previous table-based coefficients, N_0 is a 
      * series so can benefit from recursive divide-and-conquer efficiency.
+     * Each term is used once, so the term table is released with the result.
      * @return the value of N_0 for preset time
      */
     public double calculate() {
         if (result == null) {
-            Series sum = new Series(this, max, 2);
+            PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.N_0, time);
+            sum = new Series(this, max, 2);
             result = Math.sqrt(sum.calculate());
+            terms.release();
+            event.end((long) max * max);
         }
         return result;
     }
+
+    /**
+     * Extends N_0 to a larger truncation, summing only the terms of the new
+     * border onto the series already summed. The border terms read the C0
+     * table, which must cover them.
+     * @param max the new maximum number of terms in every sum
+     * @return the value of N_0 for preset time at the new truncation
+     */
+    public double extend(int max) {
+        if (sum == null) {
+            this.max = max;
+            return calculate();
+        }
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.N_0, time);
+        long border = (long) max * max - (long) this.max * this.max;
+        this.max = max;
+        result = Math.sqrt(sum.extend(max));
+        event.end(border);
+        return result;
+    }
 }
@@ -0,0 +1,724 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+
+/**
+ * Iterative nested summation for any number of nested sums, shared by the
+ * series classes. The indices advance like an odometer: the innermost index
+ * (first) runs fastest in a flat loop and the outer indices are carried when
+ * it wraps. Every inner sum is completed before it is added to the enclosing
+ * sum, so the result is rounded exactly like the recursive definition, but no
+ * objects are created per term or per inner sum.
+ *
+ * Sums declared symmetric visit only ordered indices, lo <= i[0] <= i[1] <=
+ * ... <= i[depth - 1], and weight each term by the number of distinct index
+ * permutations it stands for, depth! / (c1! c2! ...) where the c are the
+ * counts of repeated index values.
+ *
+ * The index array passed in is used as the working array and the sum is held
+ * in local variables, so any number of sums may run at once on different
+ * arrays.
+ *
+ * @author forest
+ */
+final class NestedLoop {
+
+    private NestedLoop() {
+    }
+
+    /**
+     * Sums the real value of terms over the first depth indices, each from 0
+     * to max - 1. Indices beyond depth keep their values.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @return the value of the nested sum
+     */
+    static double sum(Sequence terms, int[] indices, int depth, int max) {
+        return sum(terms, indices, depth, new int[depth], filled(depth, max), Symmetry.NONE);
+    }
+
+    /**
+     * Sums the real value of terms over the box lo[k] <= indices[k] < hi[k]
+     * of the first depth indices. Indices beyond depth keep their values. For
+     * a symmetric sum, every index starts from lo[0], the outermost index runs
+     * up to hi[depth - 1] and the inner ones up to the next index out.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param lo first index of every sum
+     * @param hi last index of every sum, exclusive
+     * @param symmetry the symmetry of the term values
+     * @return the value of the nested sum
+     */
+    static double sum(Sequence terms, int[] indices, int depth, int[] lo, int[] hi,
+            Symmetry symmetry) {
+        if (depth <= 0 || hi[depth - 1] <= lo[depth - 1]) {
+            return 0.0;
+        }
+        if (depth > 1 && symmetry == Symmetry.ANTISYMMETRIC) {
+            return 0.0;
+        }
+        if (depth > 1 && symmetry != Symmetry.NONE) {
+            return ordered(terms, indices, depth, lo[0], lo[depth - 1], hi[depth - 1]);
+        }
+        for (int k = 0; k < depth; k++) {
+            if (hi[k] <= lo[k]) {
+                return 0.0;
+            }
+            indices[k] = lo[k];
+        }
+        double[] partial = new double[depth]; //running sums of outer levels
+        while (true) {
+            double s = terms instanceof DoubleSequence
+                    ? row((DoubleSequence) terms, indices, lo[0], hi[0])
+                    : row(terms, indices, lo[0], hi[0]);
+            //s is a complete inner sum; carry it outwards while indices wrap
+            int k = 1;
+            while (true) {
+                if (k == depth) {
+                    return s;
+                }
+                partial[k] += s;
+                if (++indices[k] < hi[k]) {
+                    break;
+                }
+                indices[k] = lo[k];
+                s = partial[k];
+                partial[k] = 0.0;
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Sums the real value of terms over the indices inside bounds that depend
+     * on the outer indices, with the outermost index also limited to first <=
+     * indices[depth - 1] < last. Indices beyond depth keep their values. Each
+     * inner sum is completed before it is added to the enclosing one.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param bounds the range of every sum
+     * @param first first value of the outermost index
+     * @param last last value of the outermost index, exclusive
+     * @return the value of the nested sum
+     */
+    static double sum(Sequence terms, int[] indices, int depth, IndexBounds bounds,
+            int first, int last) {
+        if (depth <= 0) {
+            return 0.0;
+        }
+        int k = depth - 1;
+        return bounded(terms, indices, k, bounds, Math.max(first, bounds.lower(indices, k)),
+                Math.min(last, bounds.upper(indices, k)));
+    }
+
+    /**
+     * Sums complex terms over the indices inside bounds that depend on the
+     * outer indices. Indices beyond depth keep their values.
+     *
+     * @param terms the series term definition, which must return Complex terms
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param bounds the range of every sum
+     * @return the value of the nested sum
+     */
+    static Complex sumComplex(Sequence terms, int[] indices, int depth, IndexBounds bounds) {
+        if (depth <= 0) {
+            return new Complex(0.0, 0.0);
+        }
+        int k = depth - 1;
+        double[] sums = new double[depth << 1]; //the last sum of every level
+        boundedComplex(terms, indices, k, bounds, bounds.lower(indices, k),
+                bounds.upper(indices, k), sums);
+        return new Complex(sums[k << 1], sums[(k << 1) + 1]);
+    }
+
+    /**
+     * The number of terms inside bounds for each value of the outermost index
+     * from first to last, exclusive
+     *
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param bounds the range of every sum
+     * @param first first value of the outermost index
+     * @param last last value of the outermost index, exclusive
+     * @return the number of terms, one count per outermost index value
+     */
+    static long[] volumes(int[] indices, int depth, IndexBounds bounds, int first, int last) {
+        long[] volumes = new long[Math.max(0, last - first)];
+        for (int i = first; i < last; i++) {
+            indices[depth - 1] = i;
+            volumes[i - first] = volume(indices, depth - 1, bounds);
+        }
+        return volumes;
+    }
+
+    /*
+     * Sum k over its range, every inner sum over the range its index sets
+     */
+    private static double bounded(Sequence terms, int[] indices, int k, IndexBounds bounds,
+            int from, int to) {
+        if (k == 0) {
+            return terms instanceof DoubleSequence
+                    ? row((DoubleSequence) terms, indices, from, to)
+                    : row(terms, indices, from, to);
+        }
+        double s = 0.0;
+        for (int i = from; i < to; i++) {
+            indices[k] = i;
+            s += bounded(terms, indices, k - 1, bounds, bounds.lower(indices, k - 1),
+                    bounds.upper(indices, k - 1));
+        }
+        return s;
+    }
+
+    /*
+     * Complex sum k over its range, left in sums[2k] and sums[2k + 1]
+     */
+    private static void boundedComplex(Sequence terms, int[] indices, int k,
+            IndexBounds bounds, int from, int to, double[] sums) {
+        double re = 0.0;
+        double im = 0.0;
+        for (int i = from; i < to; i++) {
+            indices[k] = i;
+            if (k == 0) {
+                Complex c = (Complex) terms.getTerm(indices);
+                re += c.real();
+                im += c.imag();
+            } else {
+                boundedComplex(terms, indices, k - 1, bounds, bounds.lower(indices, k - 1),
+                        bounds.upper(indices, k - 1), sums);
+                re += sums[(k - 1) << 1];
+                im += sums[((k - 1) << 1) + 1];
+            }
+        }
+        sums[k << 1] = re;
+        sums[(k << 1) + 1] = im;
+    }
+
+    /*
+     * The number of terms of the sums inside sum k + 1 at the current indices
+     */
+    private static long volume(int[] indices, int k, IndexBounds bounds) {
+        if (k == 0) {
+            return 1;
+        }
+        int from = bounds.lower(indices, k - 1);
+        int to = bounds.upper(indices, k - 1);
+        if (k == 1) {
+            return Math.max(0, to - from);
+        }
+        long volume = 0;
+        for (int i = from; i < to; i++) {
+            indices[k - 1] = i;
+            volume += volume(indices, k - 1, bounds);
+        }
+        return volume;
+    }
+
+    /**
+     * Sums complex terms over the first depth indices, each from 0 to max - 1.
+     * Indices beyond depth keep their values.
+     *
+     * @param terms the series term definition, which must return Complex terms
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @return the value of the nested sum
+     */
+    static Complex sumComplex(Sequence terms, int[] indices, int depth, int max) {
+        return sumComplex(terms, indices, depth, max, Symmetry.NONE);
+    }
+
+    /**
+     * Sums complex terms over the first depth indices, each from 0 to max - 1,
+     * using the declared symmetry of the terms. Indices beyond depth keep
+     * their values.
+     *
+     * @param terms the series term definition, which must return Complex terms
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @param symmetry the symmetry of the terms
+     * @return the value of the nested sum
+     */
+    static Complex sumComplex(Sequence terms, int[] indices, int depth, int max,
+            Symmetry symmetry) {
+        if (max <= 0 || depth <= 0 || depth > 1 && symmetry == Symmetry.ANTISYMMETRIC) {
+            return new Complex(0.0, 0.0);
+        }
+        if (depth > 1 && symmetry != Symmetry.NONE) {
+            return orderedComplex(terms, indices, depth, max, symmetry == Symmetry.HERMITIAN);
+        }
+        for (int k = 0; k < depth; k++) {
+            indices[k] = 0;
+        }
+        double[] partialRe = new double[depth];
+        double[] partialIm = new double[depth];
+        while (true) {
+            double re = 0.0;
+            double im = 0.0;
+            for (int i = 0; i < max; i++) {
+                indices[0] = i;
+                Complex c = (Complex) terms.getTerm(indices);
+                re += c.real();
+                im += c.imag();
+            }
+            int k = 1;
+            while (true) {
+                if (k == depth) {
+                    return new Complex(re, im);
+                }
+                partialRe[k] += re;
+                partialIm[k] += im;
+                if (++indices[k] < max) {
+                    break;
+                }
+                indices[k] = 0;
+                re = partialRe[k];
+                im = partialIm[k];
+                partialRe[k] = 0.0;
+                partialIm[k] = 0.0;
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Sums the real value of terms over the first depth indices, each from 0
+     * to at most max - 1, stopping every sum once its remaining terms are
+     * within the tolerance of the convergence rule. Inner sums are evaluated
+     * recursively on the shared index array.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max largest number of terms in every sum
+     * @param convergence the stopping rule
+     * @param used receives the largest number of terms used in each dimension
+     * @param evaluations receives the number of terms evaluated, in [0]
+     * @return the value of the nested sum
+     */
+    static double converge(Sequence terms, int[] indices, int depth, int max,
+            Convergence convergence, int[] used, long[] evaluations) {
+        int k = depth - 1;
+        double sum = 0.0;
+        double previous = Double.NaN;
+        int i = 0;
+        while (i < max) {
+            indices[k] = i++;
+            double v;
+            if (k == 0) {
+                v = terms instanceof DoubleSequence
+                        ? ((DoubleSequence) terms).getDouble(indices)
+                        : terms.getTerm(indices).doubleValue();
+                evaluations[0]++;
+            } else {
+                v = converge(terms, indices, k, max, convergence, used, evaluations);
+            }
+            sum += v;
+            if (convergence.converged(indices, k, previous, Math.abs(v), Math.abs(sum))) {
+                break;
+            }
+            previous = Math.abs(v);
+        }
+        used[k] = Math.max(used[k], i);
+        return sum;
+    }
+
+    /**
+     * Sums complex terms like converge, testing the magnitudes of the terms
+     * and partial sums against the convergence rule.
+     *
+     * @param terms the series term definition, which must return Complex terms
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max largest number of terms in every sum
+     * @param convergence the stopping rule
+     * @param used receives the largest number of terms used in each dimension
+     * @param evaluations receives the number of terms evaluated, in [0]
+     * @return the value of the nested sum
+     */
+    static Complex convergeComplex(Sequence terms, int[] indices, int depth, int max,
+            Convergence convergence, int[] used, long[] evaluations) {
+        int k = depth - 1;
+        double re = 0.0;
+        double im = 0.0;
+        double previous = Double.NaN;
+        int i = 0;
+        while (i < max) {
+            indices[k] = i++;
+            Complex v = k == 0
+                    ? (Complex) terms.getTerm(indices)
+                    : convergeComplex(terms, indices, k, max, convergence, used, evaluations);
+            if (k == 0) {
+                evaluations[0]++;
+            }
+            re += v.real();
+            im += v.imag();
+            double magnitude = Math.hypot(v.real(), v.imag());
+            if (convergence.converged(indices, k, previous, magnitude, Math.hypot(re, im))) {
+                break;
+            }
+            previous = magnitude;
+        }
+        used[k] = Math.max(used[k], i);
+        return new Complex(re, im);
+    }
+
+    /**
+     * Sums the real value of terms over the hypercube shells of the first
+     * depth indices: shell n holds the terms whose largest index is n, so the
+     * sum of shells 0 to n - 1 is the series truncated to n terms in every
+     * dimension. Only the terms of shells from to to - 1 are visited, so a
+     * series truncated at from terms is extended to to terms by summing the
+     * border alone. Inner sums are evaluated recursively on the shared index
+     * array.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param from first shell, inclusive
+     * @param to last shell, exclusive
+     * @return the sum over every shell, shell from first
+     */
+    static double[] shells(Sequence terms, int[] indices, int depth, int from, int to) {
+        double[] shells = new double[Math.max(to - from, 0)];
+        if (depth > 0 && to > from) {
+            shells(terms, indices, depth, from, to, 0, shells, null);
+        }
+        return shells;
+    }
+
+    /**
+     * Sums complex terms over hypercube shells like shells.
+     *
+     * @param terms the series term definition, which must return Complex terms
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param from first shell, inclusive
+     * @param to last shell, exclusive
+     * @return the real and imaginary parts of the sum over every shell
+     */
+    static double[][] shellsComplex(Sequence terms, int[] indices, int depth, int from, int to) {
+        double[][] shells = new double[2][Math.max(to - from, 0)];
+        if (depth > 0 && to > from) {
+            shells(terms, indices, depth, from, to, 0, shells[0], shells[1]);
+        }
+        return shells;
+    }
+
+    /*
+     * Adds every term to the shell of its largest index, outer being the
+     * largest of the enclosing indices. The innermost index of a term whose
+     * enclosing indices are all below the first shell must reach it. Complex
+     * terms when im is not null.
+     */
+    private static void shells(Sequence terms, int[] indices, int depth, int from, int to,
+            int outer, double[] re, double[] im) {
+        int k = depth - 1;
+        for (int i = k == 0 && outer < from ? from : 0; i < to; i++) {
+            indices[k] = i;
+            int shell = Math.max(outer, i);
+            if (k > 0) {
+                shells(terms, indices, k, from, to, shell, re, im);
+            } else if (im != null) {
+                Complex c = (Complex) terms.getTerm(indices);
+                re[shell - from] += c.real();
+                im[shell - from] += c.imag();
+            } else {
+                re[shell - from] += terms instanceof DoubleSequence
+                        ? ((DoubleSequence) terms).getDouble(indices)
+                        : terms.getTerm(indices).doubleValue();
+            }
+        }
+    }
+
+    /**
+     * Sums the real value of terms over the first depth indices, each from 0
+     * to max - 1, with compensated addition in every sum. Inner sums are
+     * evaluated recursively on the shared index array.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @return the value of the nested sum
+     */
+    static double compensated(Sequence terms, int[] indices, int depth, int max) {
+        int k = depth - 1;
+        double[] sum = new double[2];
+        for (int i = 0; i < max; i++) {
+            indices[k] = i;
+            double v;
+            if (k == 0) {
+                v = terms instanceof DoubleSequence
+                        ? ((DoubleSequence) terms).getDouble(indices)
+                        : terms.getTerm(indices).doubleValue();
+            } else {
+                v = compensated(terms, indices, k, max);
+            }
+            Summation.add(sum, v);
+        }
+        return sum[0] + sum[1];
+    }
+
+    /**
+     * Sums complex terms like compensated, with compensated addition of the
+     * real and imaginary parts.
+     *
+     * @param terms the series term definition, which must return Complex terms
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @return the value of the nested sum
+     */
+    static Complex compensatedComplex(Sequence terms, int[] indices, int depth, int max) {
+        int k = depth - 1;
+        double[] re = new double[2];
+        double[] im = new double[2];
+        for (int i = 0; i < max; i++) {
+            indices[k] = i;
+            Complex v = k == 0
+                    ? (Complex) terms.getTerm(indices)
+                    : compensatedComplex(terms, indices, k, max);
+            Summation.add(re, v.real());
+            Summation.add(im, v.imag());
+        }
+        return new Complex(re[0] + re[1], im[0] + im[1]);
+    }
+
+    /**
+     * Sums the real value of terms over the first depth indices, each from 0
+     * to max - 1, in double-double arithmetic. Terms that are DoubleDouble
+     * values are summed at full precision, others as doubles. Inner sums are
+     * evaluated recursively on the shared index array.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @return the value of the nested sum
+     */
+    static DoubleDouble doubleDouble(Sequence terms, int[] indices, int depth, int max) {
+        int k = depth - 1;
+        DoubleDouble sum = DoubleDouble.ZERO;
+        for (int i = 0; i < max; i++) {
+            indices[k] = i;
+            if (k > 0) {
+                sum = sum.add(doubleDouble(terms, indices, k, max));
+            } else if (terms instanceof DoubleSequence) {
+                sum = sum.add(((DoubleSequence) terms).getDouble(indices));
+            } else {
+                Number v = terms.getTerm(indices);
+                sum = v instanceof DoubleDouble ? sum.add((DoubleDouble) v) : sum.add(v.doubleValue());
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Sums complex terms like doubleDouble. Terms may be Complex or
+     * DoubleDoubleComplex values.
+     *
+     * @param terms the series term definition
+     * @param indices working indices, at least depth long
+     * @param depth number of nested sums
+     * @param max number of terms in every sum
+     * @return the value of the nested sum
+     */
+    static DoubleDoubleComplex doubleDoubleComplex(Sequence terms, int[] indices, int depth,
+            int max) {
+        int k = depth - 1;
+        DoubleDoubleComplex sum = DoubleDoubleComplex.ZERO;
+        for (int i = 0; i < max; i++) {
+            indices[k] = i;
+            if (k > 0) {
+                sum = sum.add(doubleDoubleComplex(terms, indices, k, max));
+            } else {
+                Number v = terms.getTerm(indices);
+                sum = v instanceof DoubleDoubleComplex
+                        ? sum.add((DoubleDoubleComplex) v) : sum.add((Complex) v);
+            }
+        }
+        return sum;
+    }
+
+    /*
+     * Real sum over ordered indices from <= i[0] <= ... <= i[depth-1], with
+     * the outermost index in [outerFrom, outerTo)
+     */
+    private static double ordered(Sequence terms, int[] indices, int depth,
+            int from, int outerFrom, int outerTo) {
+        for (int k = 0; k < depth - 1; k++) {
+            indices[k] = from;
+        }
+        indices[depth - 1] = Math.max(outerFrom, from);
+        if (indices[depth - 1] >= outerTo) {
+            return 0.0;
+        }
+        double[] partial = new double[depth];
+        while (true) {
+            //off-diagonal part of the row, then the term on the diagonal
+            int top = indices[1];
+            double off = terms instanceof DoubleSequence
+                    ? row((DoubleSequence) terms, indices, from, top)
+                    : row(terms, indices, from, top);
+            indices[0] = top;
+            double diag = terms instanceof DoubleSequence
+                    ? ((DoubleSequence) terms).getDouble(indices)
+                    : terms.getTerm(indices).doubleValue();
+            double s = weight(indices, depth) * (off + diag / (run(indices, depth) + 1));
+            int k = 1;
+            while (true) {
+                if (k == depth) {
+                    return s;
+                }
+                partial[k] += s;
+                int upper = k == depth - 1 ? outerTo : indices[k + 1] + 1;
+                if (++indices[k] < upper) {
+                    break;
+                }
+                indices[k] = from;
+                s = partial[k];
+                partial[k] = 0.0;
+                k++;
+            }
+        }
+    }
+
+    /*
+     * Complex sum over ordered indices 0 <= i[0] <= ... <= i[depth-1] < max.
+     * A Hermitian sum keeps only real parts: each off-diagonal pair adds up to
+     * twice its real part and the diagonal is real.
+     */
+    private static Complex orderedComplex(Sequence terms, int[] indices, int depth, int max,
+            boolean hermitian) {
+        for (int k = 0; k < depth; k++) {
+            indices[k] = 0;
+        }
+        double[] partialRe = new double[depth];
+        double[] partialIm = new double[depth];
+        while (true) {
+            int top = indices[1];
+            double offRe = 0.0;
+            double offIm = 0.0;
+            for (int i = 0; i < top; i++) {
+                indices[0] = i;
+                Complex c = (Complex) terms.getTerm(indices);
+                offRe += c.real();
+                offIm += c.imag();
+            }
+            indices[0] = top;
+            Complex diag = (Complex) terms.getTerm(indices);
+            double w = weight(indices, depth);
+            int r = run(indices, depth) + 1;
+            double re = w * (offRe + diag.real() / r);
+            double im = hermitian ? 0.0 : w * (offIm + diag.imag() / r);
+            int k = 1;
+            while (true) {
+                if (k == depth) {
+                    return new Complex(re, im);
+                }
+                partialRe[k] += re;
+                partialIm[k] += im;
+                int upper = k == depth - 1 ? max : indices[k + 1] + 1;
+                if (++indices[k] < upper) {
+                    break;
+                }
+                indices[k] = 0;
+                re = partialRe[k];
+                im = partialIm[k];
+                partialRe[k] = 0.0;
+                partialIm[k] = 0.0;
+                k++;
+            }
+        }
+    }
+
+    /*
+     * depth! / (c1! c2! ...) for the counts c of repeated values among the
+     * outer indices i[1..depth-1], which are in non-decreasing order. A term
+     * whose innermost index is below i[1] has exactly this multiplicity.
+     */
+    private static double weight(int[] indices, int depth) {
+        double w = factorial(depth);
+        int count = 1;
+        for (int k = 2; k < depth; k++) {
+            if (indices[k] == indices[k - 1]) {
+                count++;
+            } else {
+                w /= factorial(count);
+                count = 1;
+            }
+        }
+        return w / factorial(count);
+    }
+
+    /*
+     * Number of outer indices equal to i[1]. A term with innermost index equal
+     * to i[1] has the multiplicity of weight divided by this plus one.
+     */
+    private static int run(int[] indices, int depth) {
+        int r = 1;
+        while (r + 1 < depth && indices[r + 1] == indices[1]) {
+            r++;
+        }
+        return r;
+    }
+
+    private static double factorial(int n) {
+        double f = 1.0;
+        for (int i = 2; i <= n; i++) {
+            f *= i;
+        }
+        return f;
+    }
+
+    private static int[] filled(int depth, int max) {
+        int[] hi = new int[depth];
+        Arrays.fill(hi, max);
+        return hi;
+    }
+
+    /*
+     * Innermost sum of primitive terms
+     */
+    private static double row(DoubleSequence terms, int[] indices, int from, int to) {
+        double s = 0.0;
+        for (int i = from; i < to; i++) {
+            indices[0] = i;
+            s += terms.getDouble(indices);
+        }
+        return s;
+    }
+
+    /*
+     * Innermost sum of boxed terms
+     */
+    private static double row(Sequence terms, int[] indices, int from, int to) {
+        double s = 0.0;
+        for (int i = from; i < to; i++) {
+            indices[0] = i;
+            s += terms.getTerm(indices).doubleValue();
+        }
+        return s;
+    }
+}
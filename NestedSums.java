@@ -14,15 +14,31 @@ package nestedsums;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A short demonstration which intentionally implements the calculations with 
  * the least complicated parameter set. Creates a file with a list of 
  * linear entropy values for field a in the two-mode gamma cavity interacting 
  * with a resonant gamma-configuration Rydberg atom based on the trance of a 
- * reduced density operator matrix.
+ * reduced density operator matrix. An argument of B or BOTH examines field b
+ * instead, or both fields from the same B tables. The time steps are
+ * calculated in parallel by the ExecutionService, and printed in order. An
+ * ExecutionPlan checks beforehand that the run fits in memory, and chooses
+ * whether the B tables are cached on or off the heap, streamed in chunks of
+ * time steps or computed by sharded worker JVMs. Finished time steps are
+ * recorded in a Checkpoint, so a run that is interrupted and started again
+ * calculates only the steps it had not finished.
  * TODO: at this time, if the file is already present, the results are not
  * recorded although they appear in the console output. A better implementation
  * is needed, such as including a timestamp on the output file so that no two 
@@ -34,25 +50,139 @@ public class NestedSums {
     public static void main(String[] args) throws IOException {
         //Entropy field parameters: {delta, g12, g23, alpha1sq, alpha2sq, detectedstate, maxtime, interval}
         double[] params = {50.0, 1.0, 1.0, 25.0, 25.0, 0.0, 50, 0.1};
-        EntropyParameters ep = new EntropyParameters(params);
+        FieldMode fields = args.length > 0 ? FieldMode.valueOf(args[0].toUpperCase())
+                : FieldMode.A;
+        EntropyParameters ep = new EntropyParameters(params, Precision.DOUBLE,
+                Summation.PLAIN, fields);
+        ExecutionPlan plan = new ExecutionPlan(ep);
+        System.out.println(plan);
+        if (plan.strategy() == ExecutionPlan.Strategy.SHARDED) {
+            runSharded(ep, plan);
+            ExecutionService.getInstance().shutdown();
+            return;
+        }
+        plan.apply();
+        plan.start();
         BSingleton bs = BSingleton.getInstance();
-        bs.init(ep); //Build B coefficient table
-        B_0 bcheck = new B_0(0.0,ep);
-        System.out.println("Normalization check: |B| squared is " + bcheck.calculate());
-        HashMap<Double, LinearEntropy> emap = new HashMap<>();
-        System.out.println("Calculating Linear Entropy for each increment " + ep.interval + " of scaled time");
-        double temp;
-        for (int t = 0; t < ep.maxtime/ep.interval; t++) {
-            emap.put(t * ep.interval, new LinearEntropy(t * ep.interval, ep));
-            temp = emap.get(t * ep.interval).calculate();
-            System.out.printf("%-3s %16s", round(t * ep.interval,1), temp);
+        double[] a = new double[ep.steps()];
+        double[] b = new double[ep.steps()]; //field b, for BOTH
+        double[] norms = new double[ep.steps()];
+        Checkpoint checkpoint = new Checkpoint(ep);
+        calculate(ep, plan.chunk(), checkpoint);
+        for (int t = 0; t < ep.steps(); t++) {
+            a[t] = checkpoint.entropy(t);
+            b[t] = checkpoint.entropyB(t);
+            norms[t] = checkpoint.norm(t);
+            System.out.printf("%-3s %16s %20s", round(t * ep.interval,1), a[t], norms[t]);
+            if (fields == FieldMode.BOTH) {
+                System.out.printf(" %20s", b[t]);
+            }
             System.out.println();
         }
-        try{
-            writeLEDataFile(ep, emap);
-        }catch(IOException e){
-            e.printStackTrace();
+        System.out.println("Q coefficient cache: " + Q_ab.getInstance().terms);
+        System.out.println("B and F storage: " + bs.arena());
+        System.out.println("Threads: " + ExecutionService.getInstance());
+        System.out.println(plan.finish(bs.arena()));
+        //the files are written on the I/O threads
+        ExecutorService io = ExecutionService.getInstance().io();
+        List<Future<?>> written = new ArrayList<>();
+        written.add(io.submit(() -> {
+            writeLEDataFile(ep, a, fields == FieldMode.B ? "B" : "A");
+            return null;
+        }));
+        if (fields == FieldMode.BOTH) {
+            written.add(io.submit(() -> {
+                writeLEDataFile(ep, b, "B");
+                return null;
+            }));
+        }
+        boolean complete = true;
+        for (Future<?> w : written) {
+            try {
+                w.get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                complete = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                complete = false;
+            }
+        }
+        if (complete) {
+            checkpoint.delete(); //the results are in the files now
         }
+        bs.release();
+        ExecutionService.getInstance().shutdown();
+    }
+
+    /**
+     * Calculates the time steps of a run that the checkpoint has not
+     * recorded, a chunk of steps at a time, and records them
+     * @param ep parameters of the run
+     * @param chunk time steps whose B tables are built at once
+     * @param checkpoint record of the finished steps
+     * @return the number of time steps calculated
+     * @throws IOException if the record cannot be saved
+     */
+    static int calculate(EntropyParameters ep, int chunk, Checkpoint checkpoint)
+            throws IOException {
+        BSingleton bs = BSingleton.getInstance();
+        AtomicInteger calculated = new AtomicInteger();
+        for (int from = 0; from < ep.steps(); from += chunk) {
+            int to = Math.min(ep.steps(), from + chunk);
+            //only the B tables from the first to the last unfinished step
+            int first = from;
+            int last = to;
+            while (first < last && checkpoint.isDone(first)) {
+                first++;
+            }
+            while (last > first && checkpoint.isDone(last - 1)) {
+                last--;
+            }
+            if (first == last) {
+                continue;
+            }
+            bs.init(ep, first, last); //Build the B coefficient tables of the chunk
+            if (first == 0) {
+                B_0 bcheck = new B_0(0.0,ep);
+                System.out.println("Normalization check: |B| squared is " + bcheck.calculate());
+                System.out.println("Calculating Linear Entropy (and the |B| norm) for each increment " + ep.interval + " of scaled time");
+            }
+            ExecutionService.getInstance().parallelFor(first, last, t -> {
+                if (!checkpoint.isDone(t)) {
+                    double entropy = new LinearEntropy(t * ep.interval, ep).calculate();
+                    double entropyB = ep.fields == FieldMode.BOTH
+                            ? new LinearEntropy(t * ep.interval, ep, FieldMode.B).calculate()
+                            : Double.NaN;
+                    checkpoint.record(t, entropy, entropyB, bs.getNorm(t * ep.interval));
+                    calculated.incrementAndGet();
+                }
+            });
+            checkpoint.save();
+        }
+        return calculated.get();
+    }
+
+    /*
+     * Computes the run in ShardWorker JVMs with heaps sized by the plan, and
+     * writes the linear entropy file like the coordinator does
+     */
+    private static void runSharded(EntropyParameters ep, ExecutionPlan plan) throws IOException {
+        Path directory = Files.createTempDirectory("nestedsums-shards");
+        ShardCoordinator coordinator = new ShardCoordinator(ep, directory, plan.workers(),
+                plan.chunk(), 2);
+        coordinator.jvmOptions.add("-Xmx"
+                + (((long) (plan.workerHeap() / ExecutionPlan.HEADROOM) >> 20) + 64) + "m");
+        plan.start();
+        double[] entropy;
+        try {
+            entropy = coordinator.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        writeLEDataFile(ep, entropy, ep.fields == FieldMode.B ? "B" : "A");
+        System.out.println(plan.finish(BSingleton.getInstance().arena()));
     }
 
     /**
@@ -63,16 +193,47 @@ public class NestedSums {
      * @throws java.io.IOException 
      */
     public static void writeLEDataFile(EntropyParameters ep, HashMap<Double, LinearEntropy> emap) throws IOException {
-        FileWriter fw = new FileWriter("lentropy_fieldA_nbar" + ep.alpha1sq
+        writeLEDataFile(ep, emap, "A");
+    }
+
+    /**
+     * Creates the linear entropy file of one field mode
+     * @param   ep  the entropy parameters of the system under investigation
+     * @param   emap    the calculated linear entropy map with time(double) keys 
+     * @param   field   the field mode, A or B, named in the file
+     * @throws java.io.IOException 
+     */
+    public static void writeLEDataFile(EntropyParameters ep, HashMap<Double, LinearEntropy> emap,
+            String field) throws IOException {
+        FileWriter fw = new FileWriter("lentropy_field" + field + "_nbar" + ep.alpha1sq
                 + "-" + ep.alpha2sq + "_0detected" + LocalTime.now().toString().replace(":","") + ".txt");
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.OUTPUT, Double.NaN);
         try (BufferedWriter w = new BufferedWriter(fw)) {
             for (int t = 0; t < ep.maxtime/ep.interval; t++) {
                 w.write(round((double) t * ep.interval,1) + " " + emap.get((double) t * ep.interval).calculate());
                 w.newLine();
             }
         }
+        event.end(emap.size());
     }
     
+    /**
+     * Creates the linear entropy file of one field mode from the values at
+     * every time step
+     * @param   ep  the entropy parameters of the system under investigation
+     * @param   entropy the linear entropy at every time step
+     * @param   field   the field mode, A or B, named in the file
+     * @throws java.io.IOException 
+     */
+    public static void writeLEDataFile(EntropyParameters ep, double[] entropy, String field)
+            throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(Paths.get("lentropy_field" + field
+                + "_nbar" + ep.alpha1sq + "-" + ep.alpha2sq + "_0detected"
+                + LocalTime.now().toString().replace(":","") + ".txt"))) {
+            ShardCoordinator.write(ep, entropy, w);
+        }
+    }
+
     public static double round (double value, int precision) {
         int scale = (int) Math.pow(10, precision);
         return (double) Math.round(value * scale) / scale;
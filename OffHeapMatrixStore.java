@@ -0,0 +1,95 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * Matrix store in native memory, allocated with the Foreign Memory API (the
+ * jdk.incubator.foreign module in JDK 17), holding doubles or floats. Each
+ * store has its own shared resource scope, so it can be read from any thread
+ * and freed on its own as soon as it is released, or with the rest of its
+ * arena. This class is only
+ * loaded by MatrixArena after it has checked that the module is present.
+ *
+ * @author forest
+ */
+final class OffHeapMatrixStore implements MatrixStore {
+
+    private final ResourceScope scope; //lifetime of the native memory
+    private final MemorySegment segment; //the stored values
+    private final int size; //number of values stored
+    private final Precision precision; //whether values are doubles or floats
+    private final MatrixArena arena; //the arena that allocated this store
+
+    OffHeapMatrixStore(int size, Precision precision, MatrixArena arena) {
+        this.size = size;
+        this.precision = precision;
+        this.arena = arena;
+        this.scope = ResourceScope.newSharedScope();
+        this.segment = MemorySegment.allocateNative((long) size * precision.bytes,
+                precision.bytes, scope);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Precision precision() {
+        return precision;
+    }
+
+    @Override
+    public double get(int offset) {
+        return precision == Precision.FLOAT
+                ? MemoryAccess.getFloatAtIndex(segment, offset)
+                : MemoryAccess.getDoubleAtIndex(segment, offset);
+    }
+
+    @Override
+    public void set(int offset, double value) {
+        if (precision == Precision.FLOAT) {
+            MemoryAccess.setFloatAtIndex(segment, offset, (float) value);
+        } else {
+            MemoryAccess.setDoubleAtIndex(segment, offset, value);
+        }
+    }
+
+    @Override
+    public void copyTo(int offset, double[] into, int start, int length) {
+        if (precision == Precision.FLOAT) {
+            for (int i = 0; i < length; i++) {
+                into[start + i] = MemoryAccess.getFloatAtIndex(segment, offset + i);
+            }
+            return;
+        }
+        MemorySegment.ofArray(into).asSlice((long) start * Double.BYTES, (long) length * Double.BYTES)
+                .copyFrom(segment.asSlice((long) offset * Double.BYTES, (long) length * Double.BYTES));
+    }
+
+    @Override
+    public double[] array() {
+        return null;
+    }
+
+    @Override
+    public synchronized void release() {
+        if (scope.isAlive()) {
+            scope.close();
+            arena.released(this);
+        }
+    }
+}
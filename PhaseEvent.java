@@ -0,0 +1,77 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for one stage of the linear entropy pipeline,
+ * with the time step it belongs to and the number of terms it produced. The
+ * event costs next to nothing unless a recording enables it, e.g.
+ *
+ *   java -XX:StartFlightRecording=filename=run.jfr ... nestedsums.NestedSums
+ *   jfr print --events nestedsums.Phase run.jfr
+ *
+ * Stages are timed by creating the event before the work and committing it
+ * after, so nested stages (N_0 within B, F within Tr(ro squared)) overlap.
+ *
+ * @author forest
+ */
+@Name("nestedsums.Phase")
+@Label("Pipeline Phase")
+@Category("Nested Sums")
+@Description("A stage of the linear entropy pipeline")
+public class PhaseEvent extends jdk.jfr.Event {
+
+    /**
+     * The stages of the pipeline
+     */
+    public enum Phase {
+        FACTORIALS, Q, C_0, N_0, B, F, TR_RO_SQUARED, OUTPUT
+    }
+
+    @Label("Phase")
+    String phase; //name of the stage
+
+    @Label("Scaled Time")
+    @Description("Time step of the stage, NaN for stages shared by every time")
+    double time; //time step of the stage
+
+    @Label("Terms")
+    @Description("Terms calculated, stored or written by the stage")
+    long size; //terms produced by the stage
+
+    /**
+     * Starts timing a stage
+     * @param phase the stage
+     * @param time the time step, NaN if the stage is shared by every time
+     */
+    PhaseEvent(Phase phase, double time) {
+        this.phase = phase.name();
+        this.time = time;
+        begin();
+    }
+
+    /**
+     * Ends the stage and records it if the event is enabled
+     * @param size terms produced by the stage
+     */
+    void end(long size) {
+        if (shouldCommit()) {
+            this.size = size;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Storage precision of the coefficient tables. Probabilities need only 4 or 5
+ * significant figures, so the B, C_0 and F tables may be stored as floats,
+ * which halves their memory and the memory traffic of the F and Tr(ro
+ * squared) stages. Products and sums of the stored values are always
+ * evaluated in double precision, as chosen by Summation.
+ *
+ * @author forest
+ */
+public enum Precision {
+
+    /**
+     * 8 byte doubles, about 16 significant figures
+     */
+    DOUBLE(Double.BYTES),
+
+    /**
+     * 4 byte floats, about 7 significant figures per stored value
+     */
+    FLOAT(Float.BYTES);
+
+    final int bytes; //storage per value
+
+    Precision(int bytes) {
+        this.bytes = bytes;
+    }
+}
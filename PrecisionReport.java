@@ -0,0 +1,77 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Accuracy report for the precision policies: runs the same linear entropy
+ * time sweep with every combination of table storage and summation, and
+ * compares each with the full double, plain summation sweep. For each policy
+ * it prints the largest absolute and relative error of the linear entropy,
+ * the significant figures that remain, and the size of one B or F table.
+ *
+ * Linear entropy is 1 - Tr(ro squared) and often small, so its relative error
+ * is larger than the relative error of the stored coefficients.
+ *
+ * Usage: PrecisionReport [delta g12 g23 alpha1sq alpha2sq detectedstate
+ * maxtime interval]
+ *
+ * @author forest
+ */
+public class PrecisionReport {
+
+    public static void main(String[] args) {
+        double[] params = {50.0, 1.0, 1.0, 9.0, 9.0, 0.0, 2, 0.25};
+        if (args.length == params.length) {
+            for (int i = 0; i < params.length; i++) {
+                params[i] = Double.parseDouble(args[i]);
+            }
+        }
+        int max = Math.max(16, (int) params[3] * (int) params[4]);
+        double[] reference = sweep(params, Precision.DOUBLE, Summation.PLAIN);
+        StringBuilder report = new StringBuilder(String.format(
+                "%-8s %-12s %14s %14s %8s %14s%n",
+                "storage", "summation", "max abs error", "max rel error", "figures", "table bytes"));
+        for (Precision storage : Precision.values()) {
+            for (Summation summation : Summation.values()) {
+                double[] result = storage == Precision.DOUBLE && summation == Summation.PLAIN
+                        ? reference : sweep(params, storage, summation);
+                double absolute = 0.0;
+                double relative = 0.0;
+                for (int t = 0; t < result.length; t++) {
+                    double error = Math.abs(result[t] - reference[t]);
+                    absolute = Math.max(absolute, error);
+                    relative = Math.max(relative, error / Math.abs(reference[t]));
+                }
+                report.append(String.format("%-8s %-12s %14.3e %14.3e %8.1f %14d%n",
+                        storage, summation, absolute, relative,
+                        relative == 0.0 ? 16.0 : -Math.log10(relative),
+                        2L * max * max * storage.bytes));
+            }
+        }
+        System.out.print(report);
+    }
+
+    /*
+     * Linear entropy at every time step of a run with the given policy
+     */
+    static double[] sweep(double[] params, Precision storage, Summation summation) {
+        EntropyParameters ep = new EntropyParameters(params, storage, summation);
+        BSingleton bs = BSingleton.getInstance();
+        bs.init(ep);
+        double[] result = new double[(int) Math.ceil(ep.maxtime / ep.interval)];
+        for (int t = 0; t < result.length; t++) {
+            result[t] = new LinearEntropy(t * ep.interval, ep).calculate();
+        }
+        bs.release();
+        return result;
+    }
+}
@@ -20,6 +20,7 @@ import java.math.BigDecimal;
 import static java.math.BigDecimal.ROUND_HALF_UP;
 import java.math.BigInteger;
 import java.math.MathContext;
+import java.util.Arrays;
 
 /**
  * Calculations for Q coefficient generated and referenced repeatedly in the
@@ -31,18 +32,26 @@ import java.math.MathContext;
  * repeatedly referenced. Q_ab values depend on a custom square-root calculation 
  * of BigIntegers, which is a significant performance bottleneck for larger 
  * maximum values.
- * TODO: Check symmetry of Q_ab values to reduce the number of calculations
- * TODO: Calculate Q_ab values/square roots in parallel, because they do not 
- *       depend on each other.
+ * Q_ab values are a product of one factor per field, so only one root is
+ * calculated per photon number, and the factors are shared when both fields
+ * have the same average photon number.
+ * Above a truncation of nestedsums.asymptotic photon numbers (512 unless
+ * set) the factors come from Stirling's series for ln n! instead, with no
+ * factorials or roots at all (see stirling for the error bound).
  *
  * @author forest
  */
 public class Q_ab implements Sequence{
     private static  Q_ab instance;
     EntropyParameters params; //Experimental conditions
-    double[][] terms;
+    MemoizedSequence terms; //table of Q values, filled once by init
+    double[] factor1; //Q factor of field 1 at every photon number
+    double[] factor2; //Q factor of field 2 at every photon number
     final static MathContext mc = new MathContext(1000);
     final static BigDecimal TWO = new BigDecimal(2, mc);
+    //truncation above which the factors come from Stirling's series
+    static final int ASYMPTOTIC = Integer.getInteger("nestedsums.asymptotic", 512);
+    boolean asymptotic; //true if the factors are Stirling estimates
 
     /**
      * Private Q parameter constructor
@@ -60,21 +69,67 @@ public class Q_ab implements Sequence{
     public void init(EntropyParameters ep){
         if (this.params != ep){
             this.params = ep;
-            FactorialSingleton fs = FactorialSingleton.getInstance();
-            if (ep.alpha2sq * ep.alpha1sq < 16){
-                fs.init(16);
-                terms = new double[16][16];
-           }
-            else{
-               fs.init(ep.alpha1sq*ep.alpha2sq);
-               terms = new double[ep.alpha2sq * ep.alpha1sq ][ep.alpha2sq * ep.alpha1sq ];
+            int max = ep.max();
+            asymptotic = asymptotic(max);
+            if (!asymptotic) {
+                FactorialSingleton.getInstance().init(max);
             }
-            System.out.println("Calculating Q coefficients ...");
-            calculate();
-            System.out.println("Q coefficients finished.");
+            terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, false, true);
+            System.out.println(asymptotic ? "Calculating Q coefficients from Stirling's series ..."
+                    : "Calculating Q coefficients ...");
+            PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.Q, Double.NaN);
+            factor1 = new double[0];
+            factor2 = factor1;
+            calculate(0, max);
+            event.end((long) max * max);
+            System.out.println("Q coefficients finished, weight outside the table is "
+                    + (1.0 - weight()));
         }
     }
 
+    /**
+     * Grows the Q table to a larger truncation, computing only the roots of
+     * the new photon numbers and the new border of the table
+     * @param   max     the new number of photon numbers per field
+     */
+    public void extend(int max) {
+        int from = terms.shape()[0];
+        if (max <= from) {
+            return;
+        }
+        System.out.println("Extending Q coefficients to " + max + " ...");
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.Q, Double.NaN);
+        asymptotic |= asymptotic(max);
+        if (!asymptotic) {
+            FactorialSingleton.getInstance().init(max);
+        }
+        terms.extend(new int[]{max, max});
+        calculate(from, max);
+        event.end((long) max * max - (long) from * from);
+        System.out.println("Q coefficients extended, weight outside the table is "
+                + (1.0 - weight()));
+    }
+
+    /**
+     * @param   max     the number of photon numbers per field
+     * @return  true if Q factors of this truncation come from Stirling's
+     *          series rather than exact factorials
+     */
+    static boolean asymptotic(int max) {
+        return max > ASYMPTOTIC;
+    }
+
+    /*
+     * The sum of Q^2 over the table. The squared factors are Poisson
+     * weights, so it costs one sum per field.
+     */
+    private double weight() {
+        double[] q1 = factor1;
+        double[] q2 = factor2;
+        return new Series(new SeparableSequence(i -> q1[i[0]] * q1[i[0]],
+                i -> q2[i[0]] * q2[i[0]]), q1.length, 2).calculate();
+    }
+
     /**
      * Optimized with memoization
      */
@@ -83,13 +138,19 @@ public class Q_ab implements Sequence{
         if (indices.length > 2) {
             throw new IndexOutOfBoundsException();
         }
-        //if the term is already calculated, fetch stored value
-        if (terms != null && terms[indices[0]][indices[1]] != 0.0) {
-            if (indices[1] < this.terms[0].length && indices[0] < this.terms.length) {
-                return terms[indices[0]][indices[1]];
-            }
+        if (terms != null) {
+            return terms.getTerm(indices);
+        }
+        return calculateTerm(indices);
+    }
+
+    /*
+     * Calculates a Q term from the exact factorials
+     */
+    private Number calculateTerm(int[] indices) {
+        if (asymptotic) {
+            return factor1[indices[0]] * factor2[indices[1]];
         }
-        //if the term is not already calculated, calculate it
         FactorialSingleton fs = FactorialSingleton.getInstance();
         BigInteger a = fs.getFactorial(indices[0]);
         BigInteger b = fs.getFactorial(indices[1]);
@@ -128,17 +189,93 @@ public class Q_ab implements Sequence{
     }
     
     /**
-     * Fills in Q-Tilda terms table of a given size.
-     * This has linear efficiency for the number of terms to calculate.
+     * Fills in Q-Tilda terms table of a given size, from the photon number
+     * where the factors end.
+     * Q(n,m) = q1(n) q2(m) with q(n) = alpha^n / sqrt(n!) / exp(alpha^2 / 2),
+     * so only one exact root per photon number is needed, and the table is
+     * the outer product of the two factors, filled in parallel rows. Only the
+     * cells with a photon number from on are filled.
      */
-    private void calculate() {
-        for (int i = 0; i < terms.length; i++) {
-            for (int j = 0; j <= i; j++) {
-                terms[i][j] = getTerm(new int[]{i, j}).doubleValue();
-                //Q-Tilda values are diagonally symetric
-                if(i != j)
-                    terms[j][i] = terms [i][j];
+    private void calculate(int from, int max) {
+        boolean shared = factor2 == factor1;
+        if (asymptotic) {
+            factor1 = stirling(params.alpha1sq, max, factor1);
+            factor2 = params.alpha1sq == params.alpha2sq && shared ? factor1
+                    : stirling(params.alpha2sq, max, factor2);
+        } else {
+            FactorialSingleton fs = FactorialSingleton.getInstance();
+            double[] roots = new double[max];
+            ExecutionService.getInstance().parallelFor(from, max,
+                    n -> roots[n] = sqrt(fs.getFactorial(n), 400).doubleValue());
+            factor1 = factor(params.alpha1, params.alpha1sq, roots, factor1);
+            factor2 = params.alpha1sq == params.alpha2sq && shared ? factor1
+                    : factor(params.alpha2, params.alpha2sq, roots, factor2);
+        }
+        double[] q1 = factor1;
+        double[] q2 = factor2;
+        ExecutionService.getInstance().parallelFor(0, max, n -> {
+            for (int m = n < from ? from : 0; m < max; m++) {
+                terms.put(new int[]{n, m}, q1[n] * q2[m], 0.0);
             }
+        });
+    }
+
+    /**
+     * Q as the product of its factors for the two fields, so that a Series
+     * of Q values costs one sum per field
+     * @return  the separable Q coefficients, null before init
+     */
+    public SeparableSequence separable() {
+        if (factor1 == null) {
+            return null;
+        }
+        double[] q1 = factor1;
+        double[] q2 = factor2;
+        return new SeparableSequence(indices -> q1[indices[0]], indices -> q2[indices[0]]);
+    }
+
+    /*
+     * The factor of one field at every photon number, in logarithms where the
+     * root or the power overflows, continuing the factors already known
+     */
+    private static double[] factor(double alpha, int alphasq, double[] roots, double[] known) {
+        FactorialSingleton fs = FactorialSingleton.getInstance();
+        double[] factor = Arrays.copyOf(known, roots.length);
+        for (int n = known.length; n < roots.length; n++) {
+            double power = Math.pow(alpha, n);
+            if (Double.isInfinite(roots[n]) || Double.isInfinite(power)) {
+                BigInteger f = fs.getFactorial(n);
+                int shift = Math.max(0, f.bitLength() - 64);
+                double lnFactorial = Math.log(f.shiftRight(shift).doubleValue())
+                        + shift * Math.log(2.0);
+                factor[n] = Math.exp(n * Math.log(alpha) - lnFactorial / 2.0 - alphasq / 2.0);
+            } else {
+                factor[n] = power / roots[n] / Math.exp(alphasq / 2.0);
+            }
+        }
+        return factor;
+    }
+
+    /*
+     * The factor of one field at every photon number from Stirling's series,
+     * continuing the factors already known:
+     *  ln q(n) = (n ln(alpha^2) - alpha^2 - ln n!) / 2
+     * Expanded about n = alpha^2 this is the Gaussian amplitude
+     *  q(n)^2 ~ exp(-(n - alpha^2)^2 / (2 alpha^2)) / (ROOT2PI alpha),
+     * but the Gaussian is out by O(1/alpha) at the mean and without bound in
+     * the tails, so the series itself is used. Its truncation error (see
+     * FactorialSingleton.lnFactorial) is below 1e-15 in ln q; the rounding of
+     * the terms of the exponent, of size n ln n, dominates, so the relative
+     * error of q(n) is about n ln(n) 2^-53: under 1e-12 to n = 1000 and under
+     * 1e-10 to n = 10^5, far inside the 4 or 5 significant figures needed.
+     */
+    private static double[] stirling(int alphasq, int max, double[] known) {
+        double[] factor = Arrays.copyOf(known, max);
+        double ln = Math.log(alphasq);
+        for (int n = known.length; n < max; n++) {
+            double power = n == 0 ? 0.0 : n * ln;
+            factor[n] = Math.exp((power - alphasq - FactorialSingleton.lnFactorial(n)) / 2.0);
         }
+        return factor;
     }
 }
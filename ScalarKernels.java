@@ -0,0 +1,61 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Kernels as plain loops, used when the Vector API is not available. The JIT
+ * may still unroll and vectorize the simpler loops.
+ *
+ * @author forest
+ */
+final class ScalarKernels extends Kernels {
+
+    @Override
+    public Complex dotConj(double[] aRe, double[] aIm, int a,
+            double[] bRe, double[] bIm, int b, int length) {
+        double re = 0.0;
+        double im = 0.0;
+        for (int i = 0; i < length; i++) {
+            double xr = aRe[a + i];
+            double xi = aIm[a + i];
+            double yr = bRe[b + i];
+            double yi = bIm[b + i];
+            re += xr * yr + xi * yi;
+            im += xi * yr - xr * yi;
+        }
+        return new Complex(re, im);
+    }
+
+    @Override
+    public double squaredModulus(double[] re, double[] im, int from, int length) {
+        double sum = 0.0;
+        for (int i = from; i < from + length; i++) {
+            sum += re[i] * re[i];
+            if (im != null) {
+                sum += im[i] * im[i];
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void sqrtRamp(double base, double step, double[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            out[i] = Math.sqrt(base + step * i);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar kernels";
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+
+/**
+ * A term that is the product of factors over disjoint groups of its indices,
+ * innermost first: f(i) g(j) for two factors of one index each, or f(i) g(j,
+ * k) for a factor of one index and one of two. A nested sum of such a term is
+ * the product of the sums of its factors,
+ *
+ *   Sum_i Sum_j f(i) g(j) = (Sum_i f(i)) (Sum_j g(j)),
+ *
+ * so Series and ComplexSeries sum each factor over its own indices instead of
+ * every product: O(n d) terms for d factors of one index instead of O(n^d).
+ * Factors may themselves be separable.
+ *
+ * The factors only see their own indices, so they cannot depend on fixed
+ * outer indices of the series. Sums with a symmetry, a convergence rule or
+ * index bounds visit the products term by term.
+ *
+ * @author forest
+ */
+public class SeparableSequence implements Sequence {
+
+    private final Sequence[] factors; //the factors, innermost indices first
+    private final int[] widths; //number of indices of each factor
+    private final int depth; //total number of indices
+
+    /**
+     * A product of factors of one index each
+     *
+     * @param factors the factor of every index, innermost first
+     */
+    public SeparableSequence(Sequence... factors) {
+        this(filled(factors.length), factors);
+    }
+
+    /**
+     * A product of factors over groups of indices
+     *
+     * @param widths number of indices of each factor, innermost first
+     * @param factors the factor of every group of indices
+     */
+    public SeparableSequence(int[] widths, Sequence... factors) {
+        if (widths.length != factors.length) {
+            throw new IllegalArgumentException("One width is needed per factor");
+        }
+        this.factors = factors.clone();
+        this.widths = widths.clone();
+        int total = 0;
+        for (int w : widths) {
+            total += w;
+        }
+        this.depth = total;
+    }
+
+    /**
+     * The product of the factors at their indices, a Complex if any factor is
+     * Complex
+     */
+    @Override
+    public Number getTerm(int[] indices) throws IndexOutOfBoundsException {
+        double re = 1.0;
+        double im = 0.0;
+        boolean complex = false;
+        int from = 0;
+        for (int k = 0; k < factors.length; k++) {
+            Number f = factors[k].getTerm(Arrays.copyOfRange(indices, from, from + widths[k]));
+            from += widths[k];
+            if (f instanceof Complex) {
+                Complex c = (Complex) f;
+                double r = re * c.real() - im * c.imag();
+                im = re * c.imag() + im * c.real();
+                re = r;
+                complex = true;
+            } else {
+                re *= f.doubleValue();
+                im *= f.doubleValue();
+            }
+        }
+        return complex ? new Complex(re, im) : (Number) re;
+    }
+
+    /**
+     * @return the total number of indices of the term
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @return the number of factors
+     */
+    public int factors() {
+        return factors.length;
+    }
+
+    /**
+     * @param k the factor, 0 for the innermost indices
+     * @return the factor
+     */
+    public Sequence factor(int k) {
+        return factors[k];
+    }
+
+    /**
+     * @param k the factor, 0 for the innermost indices
+     * @return the number of indices of the factor
+     */
+    public int width(int k) {
+        return widths[k];
+    }
+
+    private static int[] filled(int count) {
+        int[] widths = new int[count];
+        Arrays.fill(widths, 1);
+        return widths;
+    }
+}
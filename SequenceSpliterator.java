@@ -0,0 +1,208 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Traverses the real values of sequence terms over a box of indices, lo[k] <=
+ * indices[k] < hi[k], so that any term definition can be reduced with a
+ * DoubleStream: parallel streams, collectors, early exit with anyMatch, and
+ * so on. The innermost index (first) runs fastest, as in Series.
+ *
+ * Splits divide the remaining terms in half on a boundary of the outermost
+ * index where possible, and every part reports its exact size. The index
+ * array handed to the terms is reused between terms, so terms must not keep
+ * it.
+ *
+ * @author forest
+ */
+public class SequenceSpliterator implements Spliterator.OfDouble {
+
+    private final Sequence terms; //the definition for a term of the series
+    private final int[] lo; //first index in every dimension
+    private final int[] hi; //last index in every dimension, exclusive
+    private final long[] strides; //terms per step of each index
+    private final int[] indices; //indices of the term at position
+    private long position; //box position of the next term
+    private final long end; //box position after the last term, exclusive
+
+    /**
+     * Spliterator over every term of a box of indices
+     *
+     * @param terms the term definition, to generate the values
+     * @param lo first index in every dimension
+     * @param hi last index in every dimension, exclusive
+     */
+    public SequenceSpliterator(Sequence terms, int[] lo, int[] hi) {
+        this(terms, lo.clone(), hi.clone(), strides(lo, hi), 0L, size(lo, hi));
+    }
+
+    private SequenceSpliterator(Sequence terms, int[] lo, int[] hi, long[] strides,
+            long position, long end) {
+        this.terms = terms;
+        this.lo = lo;
+        this.hi = hi;
+        this.strides = strides;
+        this.indices = new int[lo.length];
+        this.position = position;
+        this.end = end;
+        seek(position);
+    }
+
+    /**
+     * Stream of the term values over indices 0 to max - 1 in every dimension
+     *
+     * @param terms the term definition, to generate the values
+     * @param max the number of terms in every dimension
+     * @param depth the number of indices
+     * @return a sequential stream, which may be made parallel
+     */
+    public static DoubleStream stream(Sequence terms, int max, int depth) {
+        int[] hi = new int[depth];
+        Arrays.fill(hi, max);
+        return stream(terms, new int[depth], hi);
+    }
+
+    /**
+     * Stream of the term values over a box of indices
+     *
+     * @param terms the term definition, to generate the values
+     * @param lo first index in every dimension
+     * @param hi last index in every dimension, exclusive
+     * @return a sequential stream, which may be made parallel
+     */
+    public static DoubleStream stream(Sequence terms, int[] lo, int[] hi) {
+        return StreamSupport.doubleStream(new SequenceSpliterator(terms, lo, hi), false);
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+        if (position >= end) {
+            return false;
+        }
+        action.accept(value());
+        position++;
+        step();
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+        if (terms instanceof DoubleSequence) {
+            DoubleSequence primitive = (DoubleSequence) terms;
+            for (; position < end; position++) {
+                action.accept(primitive.getDouble(indices));
+                step();
+            }
+        } else {
+            for (; position < end; position++) {
+                action.accept(terms.getTerm(indices).doubleValue());
+                step();
+            }
+        }
+    }
+
+    /**
+     * Splits off the first half of the remaining terms, cut at a change of the
+     * outermost index unless fewer than two of its values remain
+     */
+    @Override
+    public Spliterator.OfDouble trySplit() {
+        long remaining = end - position;
+        if (remaining < 2) {
+            return null;
+        }
+        long middle = position + remaining / 2;
+        long slab = strides[strides.length - 1];
+        long aligned = middle / slab * slab;
+        if (aligned <= position) {
+            aligned += slab;
+        }
+        if (aligned < end) {
+            middle = aligned;
+        }
+        SequenceSpliterator prefix = new SequenceSpliterator(terms, lo, hi, strides,
+                position, middle);
+        position = middle;
+        seek(position);
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - position;
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+
+    private double value() {
+        return terms instanceof DoubleSequence
+                ? ((DoubleSequence) terms).getDouble(indices)
+                : terms.getTerm(indices).doubleValue();
+    }
+
+    /*
+     * Advances the indices to the next term, innermost first
+     */
+    private void step() {
+        for (int k = 0; k < indices.length; k++) {
+            if (++indices[k] < hi[k]) {
+                return;
+            }
+            indices[k] = lo[k];
+        }
+    }
+
+    /*
+     * Sets the indices of the term at a box position
+     */
+    private void seek(long at) {
+        if (at >= end) {
+            return;
+        }
+        for (int k = indices.length - 1; k >= 0; k--) {
+            indices[k] = lo[k] + (int) (at / strides[k]);
+            at %= strides[k];
+        }
+    }
+
+    private static long[] strides(int[] lo, int[] hi) {
+        long[] strides = new long[lo.length];
+        long stride = 1;
+        for (int k = 0; k < lo.length; k++) {
+            strides[k] = stride;
+            stride *= Math.max(0, hi[k] - lo[k]);
+        }
+        return strides;
+    }
+
+    private static long size(int[] lo, int[] hi) {
+        long size = lo.length == 0 ? 0 : 1;
+        for (int k = 0; k < lo.length; k++) {
+            size *= Math.max(0, hi[k] - lo[k]);
+        }
+        return size;
+    }
+}
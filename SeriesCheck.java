@@ -0,0 +1,159 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+
+/**
+ * Checks the shortcuts Series and ComplexSeries take over the terms of a
+ * nested sum against the plain sum of every term of the box: the ordered
+ * terms weighted by their permutations of a SYMMETRIC sum, the product of
+ * the sums of the factors of a SeparableSequence, and the terms inside
+ * IndexBounds.
+ *
+ * @author forest
+ */
+public class SeriesCheck {
+
+    static final double TOLERANCE = 1e-12; //relative difference from the box sum
+    static final int MAX = 13; //terms in every sum
+
+    public static void main(String[] args) {
+        run();
+        System.out.println("Series shortcuts agree with the box sums to " + TOLERANCE);
+    }
+
+    static void run() {
+        for (int depth = 2; depth <= 4; depth++) {
+            symmetry(depth);
+        }
+        factorised();
+        bounds("triangular", 3, IndexBounds.triangular(3, MAX));
+        bounds("simplex", 3, IndexBounds.simplex(3, 10));
+        bounds("band", 3, IndexBounds.band(3, MAX, 2));
+        bounds("strictly ordered", 3, new IndexBounds() {
+            @Override
+            public int lower(int[] indices, int dimension) {
+                return 0;
+            }
+
+            @Override
+            public int upper(int[] indices, int dimension) {
+                return dimension == 2 ? MAX : indices[dimension + 1];
+            }
+        });
+        bounds("empty", 2, IndexBounds.simplex(2, -1));
+    }
+
+    /*
+     * The product of one real or complex factor over every index is
+     * symmetric, summed over the ordered indices and over the whole box. The
+     * box sum reads the term through a plain Sequence, so it visits every
+     * product instead of the factors.
+     */
+    private static void symmetry(int depth) {
+        Sequence real = indices -> Math.exp(-0.3 * indices[0]) * (1.0 + indices[0]);
+        SeparableSequence term = new SeparableSequence(repeated(real, depth));
+        compare("SYMMETRIC Series of depth " + depth,
+                new Series(term, MAX, depth, Symmetry.SYMMETRIC).calculate(),
+                new Series(term::getTerm, MAX, depth).calculate());
+        Sequence complex = indices -> new Complex(Math.exp(-0.2 * indices[0]),
+                0.1 * Math.sin(indices[0]));
+        term = new SeparableSequence(repeated(complex, depth));
+        Complex value = new ComplexSeries(term, MAX, depth, Symmetry.SYMMETRIC).calculate();
+        Complex expected = new ComplexSeries(term::getTerm, MAX, depth).calculate();
+        compare("SYMMETRIC ComplexSeries of depth " + depth + " real part",
+                value.real(), expected.real());
+        compare("SYMMETRIC ComplexSeries of depth " + depth + " imaginary part",
+                value.imag(), expected.imag());
+    }
+
+    /*
+     * A term of one index times a term of two that is not symmetric in them,
+     * that term times one more factor of one index with DOUBLE_DOUBLE
+     * summation, and a complex factor of one index times a real one of two
+     */
+    private static void factorised() {
+        Sequence f = indices -> 1.0 / (1.0 + indices[0] * indices[0]);
+        Sequence g = indices -> Math.exp(-0.1 * indices[0] - 0.25 * indices[1]);
+        SeparableSequence term = new SeparableSequence(new int[]{1, 2}, f, g);
+        compare("factorised Series", new Series(term, MAX, 3).calculate(),
+                new Series(term::getTerm, MAX, 3).calculate());
+        term = new SeparableSequence(new int[]{1, 3}, f, term);
+        Series extended = new Series(term, MAX, 4, Summation.DOUBLE_DOUBLE);
+        compare("factorised DOUBLE_DOUBLE Series", extended.calculate(),
+                new Series(term::getTerm, MAX, 4, Summation.DOUBLE_DOUBLE).calculate());
+        Checks.require(extended.getExtendedValue() != null,
+                "factorised DOUBLE_DOUBLE Series has no extended value");
+        Sequence h = indices -> new Complex(Math.cos(0.3 * indices[0]), Math.sin(0.3 * indices[0]));
+        term = new SeparableSequence(new int[]{1, 2}, h, g);
+        Complex value = new ComplexSeries(term, MAX, 3).calculate();
+        Complex expected = new ComplexSeries(term::getTerm, MAX, 3).calculate();
+        compare("factorised ComplexSeries real part", value.real(), expected.real());
+        compare("factorised ComplexSeries imaginary part", value.imag(), expected.imag());
+    }
+
+    /*
+     * The bounded sum of a term that is not symmetric, real and complex,
+     * against the box sum of the same term set to zero outside the bounds.
+     * The strictly ordered bounds give an empty inner range whenever the next
+     * index out is 0, and the empty ones an empty outermost sum.
+     */
+    private static void bounds(String name, int depth, IndexBounds bounds) {
+        Sequence real = indices -> {
+            double term = 1.0;
+            for (int k = 0; k < depth; k++) {
+                term *= Math.exp(-0.1 * (k + 1) * indices[k]);
+            }
+            return term;
+        };
+        Sequence filtered = indices -> inside(bounds, indices, depth) ? real.getTerm(indices) : 0.0;
+        compare(name + " Series", new Series(real, depth, bounds).calculate(),
+                new Series(filtered, MAX, depth).calculate());
+        Sequence complex = indices -> {
+            double phase = 0.0;
+            for (int k = 0; k < depth; k++) {
+                phase += (k + 1) * 0.2 * indices[k];
+            }
+            return new Complex(Math.cos(phase), Math.sin(phase));
+        };
+        filtered = indices -> inside(bounds, indices, depth) ? complex.getTerm(indices)
+                : new Complex(0.0, 0.0);
+        Complex value = new ComplexSeries(complex, depth, bounds).calculate();
+        Complex expected = new ComplexSeries(filtered, MAX, depth).calculate();
+        compare(name + " ComplexSeries real part", value.real(), expected.real());
+        compare(name + " ComplexSeries imaginary part", value.imag(), expected.imag());
+    }
+
+    /*
+     * Whether every index lies in the range its bounds give, outermost first
+     */
+    private static boolean inside(IndexBounds bounds, int[] indices, int depth) {
+        for (int k = depth - 1; k >= 0; k--) {
+            if (indices[k] < bounds.lower(indices, k) || indices[k] >= bounds.upper(indices, k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Sequence[] repeated(Sequence factor, int count) {
+        Sequence[] factors = new Sequence[count];
+        Arrays.fill(factors, factor);
+        return factors;
+    }
+
+    private static void compare(String name, double value, double expected) {
+        Checks.require(Math.abs(value - expected) <= TOLERANCE * Math.max(1.0, Math.abs(expected)),
+                name + " is " + value + ", summed over the box " + expected);
+    }
+}
@@ -0,0 +1,368 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Splits the time grid of a linear entropy run into shards of consecutive
+ * time steps and computes them in local worker JVMs (ShardWorker), so a run
+ * can use every core of a machine without one giant heap. Each worker builds
+ * only the B tables of the shard it is working on.
+ *
+ * Coordinator and workers share a file based work queue in a directory:
+ *  queue/    one task file per shard waiting to be computed
+ *  running/  task files claimed by a worker, prefixed with its id
+ *  done/     one result file per finished shard
+ * A worker claims a task by atomically moving it from queue to running, and
+ * publishes its result by atomically moving a finished file into done, so a
+ * result is either complete or absent. When a worker dies, the coordinator
+ * moves its claimed tasks back to the queue with one more attempt counted,
+ * and starts a replacement. A shard that fails more than the retry limit
+ * fails the run, and so do more than the retry limit of workers in a row
+ * that exit with an error before claiming any task (bad JVM options or
+ * class path, too little memory to start). Finally the results are merged
+ * in time order into the same format NestedSums writes.
+ *
+ * Usage: ShardCoordinator [-w workers] [-s steps per shard] [-r retries]
+ *        [-d queue directory] [-j "worker JVM options"] [-o output file]
+ *        [delta g12 g23 alpha1sq alpha2sq detectedstate maxtime interval]
+ *
+ * @author forest
+ */
+public class ShardCoordinator {
+
+    static final String QUEUE = "queue"; //tasks waiting for a worker
+    static final String RUNNING = "running"; //tasks claimed by a worker
+    static final String DONE = "done"; //results of finished shards
+    static final String SEPARATOR = "__"; //between worker id and task name
+    private static final long POLL = 100; //milliseconds between queue checks
+
+    EntropyParameters ep; //parameters of the run
+    Path directory; //the work queue
+    int workers; //largest number of worker JVMs at once
+    int shardSteps; //time steps per shard
+    int retries; //extra attempts allowed for a failed shard
+    List<String> jvmOptions = new ArrayList<>(); //options for the worker JVMs
+    Map<String, Process> running = new HashMap<>(); //live workers by id
+    int started; //workers started so far, for their ids
+    int failedStarts; //workers in a row that failed holding no task
+
+    /**
+     * @param ep parameters of the run
+     * @param directory the work queue, created if needed
+     * @param workers largest number of worker JVMs at once
+     * @param shardSteps time steps per shard
+     * @param retries extra attempts allowed for a failed shard
+     */
+    public ShardCoordinator(EntropyParameters ep, Path directory, int workers,
+            int shardSteps, int retries) {
+        this.ep = ep;
+        this.directory = directory;
+        this.workers = Math.max(1, workers);
+        this.shardSteps = Math.max(1, shardSteps);
+        this.retries = Math.max(0, retries);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        double[] params = {50.0, 1.0, 1.0, 25.0, 25.0, 0.0, 50, 0.1};
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int shardSteps = 0;
+        int retries = 2;
+        Path directory = null;
+        String output = null;
+        String jvm = "";
+        List<Double> values = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-w".equals(args[i]) && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            } else if ("-s".equals(args[i]) && i + 1 < args.length) {
+                shardSteps = Integer.parseInt(args[++i]);
+            } else if ("-r".equals(args[i]) && i + 1 < args.length) {
+                retries = Integer.parseInt(args[++i]);
+            } else if ("-d".equals(args[i]) && i + 1 < args.length) {
+                directory = Paths.get(args[++i]);
+            } else if ("-j".equals(args[i]) && i + 1 < args.length) {
+                jvm = args[++i];
+            } else if ("-o".equals(args[i]) && i + 1 < args.length) {
+                output = args[++i];
+            } else {
+                values.add(Double.parseDouble(args[i]));
+            }
+        }
+        if (values.size() == params.length) {
+            for (int i = 0; i < params.length; i++) {
+                params[i] = values.get(i);
+            }
+        }
+        EntropyParameters ep = new EntropyParameters(params);
+        if (shardSteps <= 0) {
+            //a few shards per worker balances the load
+            shardSteps = Math.max(1, ep.steps() / (4 * workers));
+        }
+        if (directory == null) {
+            directory = Files.createTempDirectory("nestedsums-shards");
+        }
+        if (output == null) {
+            output = "lentropy_fieldA_nbar" + ep.alpha1sq + "-" + ep.alpha2sq
+                    + "_0detected_sharded.txt";
+        }
+        ShardCoordinator coordinator = new ShardCoordinator(ep, directory, workers,
+                shardSteps, retries);
+        if (!jvm.isBlank()) {
+            coordinator.jvmOptions.addAll(Arrays.asList(jvm.trim().split("\\s+")));
+        }
+        double[] entropy = coordinator.run();
+        try (BufferedWriter w = Files.newBufferedWriter(Paths.get(output))) {
+            write(ep, entropy, w);
+        }
+        System.out.println("Linear entropy of " + entropy.length + " time steps written to "
+                + output);
+    }
+
+    /**
+     * Computes the linear entropy at every time step of the run
+     * @return the linear entropy values in time order
+     * @throws IOException if the queue fails, a shard runs out of retries or
+     *                     the workers keep failing before claiming a task
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public double[] run() throws IOException, InterruptedException {
+        for (String sub : new String[]{QUEUE, RUNNING, DONE}) {
+            Path dir = directory.resolve(sub);
+            Files.createDirectories(dir);
+            try (Stream<Path> old = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) old::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+        int steps = ep.steps();
+        int shards = (steps + shardSteps - 1) / shardSteps;
+        for (int k = 0; k < shards; k++) {
+            writeTask(k, k * shardSteps, Math.min(steps, (k + 1) * shardSteps), 0);
+        }
+        System.out.println("Sharding " + steps + " time steps into " + shards
+                + " shards for up to " + workers + " workers in " + directory);
+        try {
+            while (count(DONE) < shards) {
+                reap();
+                int pending = count(QUEUE);
+                while (pending > 0
+                        && running.size() < Math.min(workers, pending + count(RUNNING))) {
+                    launch();
+                }
+                Thread.sleep(POLL);
+            }
+        } finally {
+            for (Process p : running.values()) {
+                p.destroy();
+            }
+        }
+        return merge(steps, shards);
+    }
+
+    /*
+     * Forgets workers that have exited and puts back the tasks they held.
+     * A worker that failed without holding a task never got to work, and
+     * one more of those than the retry limit in a row fails the run rather
+     * than starting replacements for ever.
+     */
+    private void reap() throws IOException {
+        Iterator<Map.Entry<String, Process>> it = running.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Process> worker = it.next();
+            if (worker.getValue().isAlive()) {
+                continue;
+            }
+            it.remove();
+            int exit = worker.getValue().exitValue();
+            int held = 0;
+            for (Path task : list(RUNNING)) {
+                String name = task.getFileName().toString();
+                if (name.startsWith(worker.getKey() + SEPARATOR)) {
+                    held++;
+                    requeue(task, name.substring(name.indexOf(SEPARATOR) + SEPARATOR.length()),
+                            exit);
+                }
+            }
+            if (exit == 0 || held > 0) {
+                failedStarts = 0;
+            } else if (++failedStarts > retries) {
+                throw new IOException(failedStarts + " workers in a row exited with code "
+                        + exit + " before claiming a shard, see "
+                        + directory.resolve(worker.getKey() + ".log"));
+            }
+        }
+    }
+
+    /*
+     * Moves a task back to the queue with one more attempt counted
+     */
+    private void requeue(Path task, String name, int exit) throws IOException {
+        Properties p = read(task);
+        int attempt = Integer.parseInt(p.getProperty("attempt")) + 1;
+        int shard = Integer.parseInt(p.getProperty("shard"));
+        if (attempt > retries) {
+            throw new IOException("Shard " + shard + " failed " + attempt
+                    + " times, last worker exit code " + exit);
+        }
+        System.out.println("Shard " + shard + " failed (worker exit code " + exit
+                + "), retry " + attempt + " of " + retries);
+        Files.delete(task);
+        writeTask(shard, Integer.parseInt(p.getProperty("from")),
+                Integer.parseInt(p.getProperty("to")), attempt);
+    }
+
+    /*
+     * Starts a worker JVM on the queue. Unless the options say otherwise, the
+     * workers share the processors between their compute pools, and load the
+     * incubator modules this JVM was started with, so they use the same
+     * kernels and storage.
+     */
+    private void launch() throws IOException {
+        String id = "w" + (started++);
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(modules(ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        command.addAll(jvmOptions);
+        if (jvmOptions.stream().noneMatch(o -> o.startsWith("-Dnestedsums.parallelism="))) {
+            command.add("-Dnestedsums.parallelism="
+                    + Math.max(1, Runtime.getRuntime().availableProcessors() / workers));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(directory.toString());
+        command.add(id);
+        File log = directory.resolve(id + ".log").toFile();
+        Process p = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(log).start();
+        running.put(id, p);
+    }
+
+    /*
+     * The --add-modules options among the arguments of a JVM, in either the
+     * --add-modules=m or the --add-modules m form
+     */
+    static List<String> modules(List<String> arguments) {
+        List<String> modules = new ArrayList<>();
+        for (int i = 0; i < arguments.size(); i++) {
+            String argument = arguments.get(i);
+            if (argument.startsWith("--add-modules=")) {
+                modules.add(argument);
+            } else if (argument.equals("--add-modules") && i + 1 < arguments.size()) {
+                modules.add(argument);
+                modules.add(arguments.get(++i));
+            }
+        }
+        return modules;
+    }
+
+    private void writeTask(int shard, int from, int to, int attempt) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("shard", Integer.toString(shard));
+        p.setProperty("from", Integer.toString(from));
+        p.setProperty("to", Integer.toString(to));
+        p.setProperty("attempt", Integer.toString(attempt));
+        p.setProperty("params", Arrays.stream(ep.toArray()).mapToObj(Double::toString)
+                .collect(Collectors.joining(",")));
+        p.setProperty("storage", ep.storage.name());
+        p.setProperty("summation", ep.summation.name());
+        String name = String.format("shard-%06d.task", shard);
+        publish(p, directory.resolve(QUEUE).resolve(name));
+    }
+
+    /*
+     * Reads every shard result in order into one array
+     */
+    private double[] merge(int steps, int shards) throws IOException {
+        double[] entropy = new double[steps];
+        for (int k = 0; k < shards; k++) {
+            Properties p = read(directory.resolve(DONE).resolve(resultName(k)));
+            int from = Integer.parseInt(p.getProperty("from"));
+            int to = Integer.parseInt(p.getProperty("to"));
+            for (int t = from; t < to; t++) {
+                entropy[t] = Double.parseDouble(p.getProperty(Integer.toString(t)));
+            }
+        }
+        return entropy;
+    }
+
+    /**
+     * Writes linear entropy values in the format of NestedSums
+     * @param   ep      the entropy parameters of the run
+     * @param   entropy the linear entropy at every time step
+     * @param   w       receives one "time value" line per time step
+     * @throws IOException
+     */
+    static void write(EntropyParameters ep, double[] entropy, Writer w) throws IOException {
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.OUTPUT, Double.NaN);
+        for (int t = 0; t < entropy.length; t++) {
+            w.write(NestedSums.round((double) t * ep.interval, 1) + " " + entropy[t]);
+            w.write(System.lineSeparator());
+        }
+        event.end(entropy.length);
+    }
+
+    static String resultName(int shard) {
+        return String.format("shard-%06d.result", shard);
+    }
+
+    /*
+     * Writes properties to a temporary file and moves it into place at once,
+     * so readers never see a partial file
+     */
+    static void publish(Properties p, Path target) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp)) {
+            p.store(w, null);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Properties read(Path file) throws IOException {
+        Properties p = new Properties();
+        try (java.io.Reader r = Files.newBufferedReader(file)) {
+            p.load(r);
+        }
+        return p;
+    }
+
+    private List<Path> list(String sub) throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve(sub))) {
+            return files.filter(f -> !f.toString().endsWith(".tmp")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private int count(String sub) throws IOException {
+        return list(sub).size();
+    }
+}
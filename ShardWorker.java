@@ -0,0 +1,112 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A worker JVM of a sharded run (see ShardCoordinator). It claims shard tasks
+ * from the queue one at a time, builds the B tables of the shard's time
+ * steps, computes the linear entropy at each of them and publishes the
+ * result, until the queue is empty. Consecutive shards with the same
+ * parameters reuse the factorial and Q tables.
+ *
+ * Usage: ShardWorker queue-directory worker-id
+ *
+ * @author forest
+ */
+public class ShardWorker {
+
+    Path directory; //the work queue
+    String id; //prefix of the tasks this worker claims
+    EntropyParameters ep; //parameters of the last shard
+
+    ShardWorker(Path directory, String id) {
+        this.directory = directory;
+        this.id = id;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ShardWorker worker = new ShardWorker(Paths.get(args[0]), args[1]);
+        Path task;
+        while ((task = worker.claim()) != null) {
+            worker.compute(task);
+        }
+        BSingleton.getInstance().release();
+    }
+
+    /*
+     * Moves the first task of the queue to running, null if the queue is
+     * empty. Another worker may claim a task first, then the next is tried.
+     */
+    Path claim() throws IOException {
+        List<Path> queue;
+        try (Stream<Path> files = Files.list(directory.resolve(ShardCoordinator.QUEUE))) {
+            queue = files.filter(f -> f.toString().endsWith(".task")).sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path task : queue) {
+            Path claimed = directory.resolve(ShardCoordinator.RUNNING)
+                    .resolve(id + ShardCoordinator.SEPARATOR + task.getFileName());
+            try {
+                Files.move(task, claimed, StandardCopyOption.ATOMIC_MOVE);
+                return claimed;
+            } catch (NoSuchFileException e) {
+                //claimed by another worker
+            } catch (AtomicMoveNotSupportedException e) {
+                throw new IOException("The queue directory must support atomic moves", e);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Computes one shard and publishes its result
+     */
+    void compute(Path task) throws IOException {
+        Properties p = ShardCoordinator.read(task);
+        double[] params = Arrays.stream(p.getProperty("params").split(","))
+                .mapToDouble(Double::parseDouble).toArray();
+        Precision storage = Precision.valueOf(p.getProperty("storage"));
+        Summation summation = Summation.valueOf(p.getProperty("summation"));
+        if (ep == null || !Arrays.equals(ep.toArray(), params)
+                || ep.storage != storage || ep.summation != summation) {
+            ep = new EntropyParameters(params, storage, summation);
+        }
+        int shard = Integer.parseInt(p.getProperty("shard"));
+        int from = Integer.parseInt(p.getProperty("from"));
+        int to = Integer.parseInt(p.getProperty("to"));
+        BSingleton.getInstance().init(ep, from, to);
+        Properties result = new Properties();
+        result.setProperty("shard", Integer.toString(shard));
+        result.setProperty("from", Integer.toString(from));
+        result.setProperty("to", Integer.toString(to));
+        for (int t = from; t < to; t++) {
+            double entropy = new LinearEntropy((double) t * ep.interval, ep).calculate();
+            result.setProperty(Integer.toString(t), Double.toString(entropy));
+        }
+        ShardCoordinator.publish(result,
+                directory.resolve(ShardCoordinator.DONE).resolve(ShardCoordinator.resultName(shard)));
+        Files.delete(task);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * How the terms of a sum are accumulated in double precision.
+ *
+ * @author forest
+ */
+public enum Summation {
+
+    /**
+     * Ordinary floating point addition. The rounding error may grow with the
+     * number of terms.
+     */
+    PLAIN,
+
+    /**
+     * Compensated (Kahan-Babuska-Neumaier) addition, which carries the
+     * rounding error of every addition in a second double, so the error stays
+     * near one rounding of the result whatever the number of terms. Costs
+     * about four times a plain addition.
+     */
+    COMPENSATED,
+
+    /**
+     * Double-double accumulation: every sum, inner sums included, is carried
+     * to about 32 decimal digits, and terms that are DoubleDouble or
+     * DoubleDoubleComplex values keep their full precision. Series and 
+     * ComplexSeries make the extended result available besides the double 
+     * one. Costs about ten times a plain addition.
+     */
+    DOUBLE_DOUBLE;
+
+    /*
+     * Adds a value to a compensated sum held as {sum, correction}
+     */
+    static void add(double[] sum, double value) {
+        double s = sum[0];
+        double t = s + value;
+        sum[1] += Math.abs(s) >= Math.abs(value) ? (s - t) + value : (value - t) + s;
+        sum[0] = t;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+/**
+ * Declares how a series term behaves when its summation indices are permuted.
+ * The series classes use the declaration to visit only the terms with ordered
+ * indices (innermost index no greater than the next one out) and weight each
+ * by the number of index permutations it stands for. Every dimension of a
+ * symmetric sum must run over the same range.
+ *
+ * The symmetry applies to the value being summed: the double value of a term
+ * for Series and ConcurrentSeries, the complex term for ComplexSeries.
+ *
+ * @author forest
+ */
+public enum Symmetry {
+
+    /**
+     * No symmetry, every term is visited
+     */
+    NONE,
+
+    /**
+     * The term is unchanged by any permutation of its indices
+     */
+    SYMMETRIC,
+
+    /**
+     * A two index term whose transpose is its complex conjugate, such as F_ab.
+     * The modulus is symmetric, so a real sum treats it as SYMMETRIC, and a
+     * complex sum is real: the diagonal plus twice the real part of the
+     * off-diagonal terms.
+     */
+    HERMITIAN,
+
+    /**
+     * Swapping any two indices changes the sign of the term, so the terms
+     * cancel and the sum is zero without visiting any term
+     */
+    ANTISYMMETRIC
+}
@@ -0,0 +1,47 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for one fork-join task of a ConcurrentSeries: a
+ * split task, whose duration includes its two halves, or a leaf task summing
+ * its box with NestedLoop. The sizes of the leaves show how evenly a sum was
+ * divided between the workers. Tasks are numerous, so no stack trace is
+ * recorded.
+ *
+ * @author forest
+ */
+@Name("nestedsums.Task")
+@Label("Series Task")
+@Category("Nested Sums")
+@Description("A fork-join task of a concurrent series")
+@StackTrace(false)
+public class TaskEvent extends jdk.jfr.Event {
+
+    @Label("Split")
+    @Description("True if the task split its range, false for a leaf")
+    boolean split; //whether the task forked two halves
+
+    @Label("Terms")
+    @Description("Terms in the box of indices of the task")
+    long size; //box volume of the task
+
+    @Label("Outer Range")
+    @Description("Values of the outermost index covered by the task")
+    int range; //width of the outermost index range
+}
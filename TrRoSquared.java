@@ -11,15 +11,16 @@
  */
 package nestedsums;
 
-import java.util.concurrent.ForkJoinPool;
-
 /**
  * Class defining the product of F_ab terms with one common index
  * which comprise the trace(ro_squared) terms
  */
-class TrRoSquared implements Sequence {
+class TrRoSquared implements DoubleSequence {
+
+    //sum Tr(ro_squared) straight from the B table with a compiled expression
+    static final boolean FUSED = Boolean.getBoolean("nestedsums.fused");
 
-    double[][] terms; //terms of the trace of (ro) squared
+    MemoizedSequence terms; //terms of the trace of (ro) squared
     F_ab fl; //F coefficient
     int max;
 
@@ -29,7 +30,7 @@ class TrRoSquared implements Sequence {
     TrRoSquared(int max, F_ab fl) {
         this.max = max;
         this.fl = fl;
-        this.terms = new double[max][max];
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, false, true);
     }
 
     /**
@@ -37,10 +38,8 @@ class TrRoSquared implements Sequence {
      */
     public TrRoSquared(double time, EntropyParameters ep) {
         this.fl = new F_ab(time, ep);
-        this.max = ep.alpha2sq * ep.alpha1sq;
-        if (this.max < 16) {
-            this.max = 16;
-        }
+        this.max = ep.max();
+        this.terms = new MemoizedSequence(this::calculateTerm, new int[]{max, max}, false, true);
     }
 
     /**
@@ -51,32 +50,117 @@ class TrRoSquared implements Sequence {
         if (indices.length > 2) {
             throw new IndexOutOfBoundsException();
         }
-        //if the term is already calculated, fetch stored value
-        if (terms != null && terms[indices[0]][indices[1]] != 0.0) {
-            if (indices[1] < this.terms[0].length && indices[0] < this.terms.length) {
-                return terms[indices[0]][indices[1]];
-            }
+        return terms.getTerm(indices);
+    }
+
+    /**
+     * Memoized term without boxing
+     */
+    @Override
+    public double getDouble(int[] indices) throws IndexOutOfBoundsException {
+        if (indices.length > 2) {
+            throw new IndexOutOfBoundsException();
+        }
+        return terms.getDouble(indices);
+    }
+
+    /*
+     * Calculates a Tr(ro_squared) term, the F coefficient conjugate squared.
+     * F is Hermitian, so the term is symmetric and a stored mirror image is
+     * reused.
+     */
+    private Number calculateTerm(int[] indices) {
+        int[] mirror = {indices[1], indices[0]};
+        if (terms.isComputed(mirror)) {
+            return terms.getDouble(mirror);
         }
-        Complex flConjugate = fl.getTerm(new int[]{indices[0], indices[1]}).conj();
-        Complex tro =  fl.getTerm(new int[]{indices[0], indices[1]}).prod(flConjugate);
-        return tro;
+        Complex f = fl.getTerm(indices);
+        return f.prod(f.conj());
     }
 
     /**
-     * Fills in Trace of Ro_Squared terms table of a given size.
-     * This function grows as O(n^2) for max n terms, so a ConcurrentSeries 
-     * calculates the sum in parallel if processors are available.
+     * Sums the Trace of Ro_Squared terms of a given size.
+     * This function grows as O(n^2) for max n terms. When the F table holds
+     * every term, it is filled and its squared moduli are summed row by row by
+     * the loop kernels, with the summation of the F coefficients (compensated
+     * for DOUBLE_DOUBLE, as the F values are stored as doubles at best).
+     * Otherwise a ConcurrentSeries calculates the sum in parallel in the
+     * shared ExecutionService pool. The terms are symmetric, so only the
+     * terms on and below the diagonal are calculated.
      */
     public double calculate() {
-        for (int i = 0; i < max; i++) {
-            for (int j = 0; j < max; j++) {
-                terms[i][j] = this.getTerm(new int[]{i, j}).doubleValue();
+        PhaseEvent event = new PhaseEvent(PhaseEvent.Phase.TR_RO_SQUARED, fl.time);
+        double value = sum();
+        event.end((long) max * max);
+        return value;
+    }
+
+    /*
+     * The sum of calculate, from the B table, from the F table or by a
+     * ConcurrentSeries
+     */
+    private double sum() {
+        if (FUSED && fl.summation == Summation.PLAIN) {
+            MemoizedSequence b = fl.bt.table(fl.time);
+            if (b != null && b.shape()[0] >= max && b.shape()[1] >= max) {
+                return fused(b, max, fl.field);
             }
         }
+        int[] shape = fl.terms.shape();
+        if (shape[0] >= max && shape[1] >= max) {
+            fl.calculate(new int[]{0, 0, max, max});
+            MatrixStore re = fl.terms.re;
+            MatrixStore im = fl.terms.im;
+            double[] sum = new double[2];
+            for (int n = 0; n < max; n++) {
+                double row = Kernels.getInstance().squaredModulus(re, im, n * shape[1], max,
+                        fl.summation);
+                if (fl.summation != Summation.PLAIN) {
+                    Summation.add(sum, row);
+                } else {
+                    sum[0] += row;
+                }
+            }
+            return sum[0] + sum[1];
+        }
         int[] indices = {0,0,max,max};
-        ConcurrentSeries sum = new ConcurrentSeries(this, indices);
-        ForkJoinPool pool = new ForkJoinPool();
-        pool.invoke(sum);
+        ConcurrentSeries sum = new ConcurrentSeries(this, indices, Symmetry.SYMMETRIC);
+        ExecutionService.getInstance().invoke(sum);
         return sum.value;
     }
+
+    /**
+     * Tr(ro_squared) as one expression over the B table, without an F table:
+     * the sum over n of |F(n,n)|^2 plus twice the sum over m < n of
+     * |F(n,m)|^2, where F(n,m) is the sum over l of B(n,l) conj(B(m,l)) for
+     * field a and of B(l,n) conj(B(l,m)) for field b. The expression is
+     * compiled to a loop nest once per table size.
+     * @param   b       the filled B table
+     * @param   max     the number of terms in every sum
+     * @param   field   A or B
+     * @return  the trace of ro squared
+     */
+    static double fused(MemoizedSequence b, int max, FieldMode field) {
+        return ExpressionCompiler.getInstance().compile(trace(b, max, field)).evaluate().real();
+    }
+
+    /**
+     * @param   b       the filled B table
+     * @param   max     the number of terms in every sum
+     * @param   field   A or B
+     * @return  the expression of fused, not yet compiled
+     */
+    static Expression trace(MemoizedSequence b, int max, FieldMode field) {
+        Expression.Index n = Expression.index("n");
+        Expression.Index m = Expression.index("m");
+        Expression.Index l = Expression.index("l");
+        Expression bn = field == FieldMode.B ? Expression.element(b, l, n)
+                : Expression.element(b, n, l);
+        Expression bm = field == FieldMode.B ? Expression.element(b, l, m)
+                : Expression.element(b, m, l);
+        Expression diagonal = Expression.sum(l, 0, max, bn.modulusSquared());
+        Expression offDiagonal = Expression.sum(l, 0, max, bn.times(bm.conj()));
+        return Expression.sum(n, 0, max, diagonal.modulusSquared()
+                .plus(Expression.sum(m, 0, n, offDiagonal.modulusSquared()).scale(2.0)));
+    }
 }
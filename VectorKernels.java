@@ -0,0 +1,99 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels on the Vector API, using the widest double vectors the processor
+ * supports. Each kernel runs full vectors over the bulk of its data and a
+ * scalar loop over the remainder. This class is only loaded by Kernels after
+ * it has checked that the jdk.incubator.vector module is present.
+ *
+ * @author forest
+ */
+final class VectorKernels extends Kernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public Complex dotConj(double[] aRe, double[] aIm, int a,
+            double[] bRe, double[] bIm, int b, int length) {
+        DoubleVector sumRe = DoubleVector.zero(SPECIES);
+        DoubleVector sumIm = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector xr = DoubleVector.fromArray(SPECIES, aRe, a + i);
+            DoubleVector xi = DoubleVector.fromArray(SPECIES, aIm, a + i);
+            DoubleVector yr = DoubleVector.fromArray(SPECIES, bRe, b + i);
+            DoubleVector yi = DoubleVector.fromArray(SPECIES, bIm, b + i);
+            sumRe = sumRe.add(xr.mul(yr)).add(xi.mul(yi));
+            sumIm = sumIm.add(xi.mul(yr)).sub(xr.mul(yi));
+        }
+        double re = sumRe.reduceLanes(VectorOperators.ADD);
+        double im = sumIm.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double xr = aRe[a + i];
+            double xi = aIm[a + i];
+            double yr = bRe[b + i];
+            double yi = bIm[b + i];
+            re += xr * yr + xi * yi;
+            im += xi * yr - xr * yi;
+        }
+        return new Complex(re, im);
+    }
+
+    @Override
+    public double squaredModulus(double[] re, double[] im, int from, int length) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, re, from + i);
+            sum = sum.add(x.mul(x));
+            if (im != null) {
+                DoubleVector y = DoubleVector.fromArray(SPECIES, im, from + i);
+                sum = sum.add(y.mul(y));
+            }
+        }
+        double total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            total += re[from + i] * re[from + i];
+            if (im != null) {
+                total += im[from + i] * im[from + i];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void sqrtRamp(double base, double step, double[] out, int length) {
+        DoubleVector ramp = DoubleVector.zero(SPECIES).addIndex(1);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            ramp.add(i).mul(step).add(base).lanewise(VectorOperators.SQRT)
+                    .intoArray(out, i);
+        }
+        for (; i < length; i++) {
+            out[i] = Math.sqrt(base + step * i);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "vector kernels, " + SPECIES.length() + " doubles wide";
+    }
+}
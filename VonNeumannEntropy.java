@@ -0,0 +1,201 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+
+/**
+ * Von Neumann entropy of field a, S = -Tr(ro ln ro) = -Sum[lambda ln lambda]
+ * over the eigenvalues lambda of the reduced density operator. Where linear
+ * entropy is the second order estimate 1 - Tr(ro_squared), this is the exact
+ * entropy.
+ *
+ * The reduced density operator is F = B B^H, so its eigenvalues come from a
+ * Lanczos solver working through products with B and B^H, O(n^2) each,
+ * without forming F at O(n^3). Weakly entangled states have a few dominant
+ * eigenvalues that carry almost all of the trace, so the solver stops after
+ * few products, once the converged eigenvalues add up to the trace.
+ *
+ * @author forest
+ */
+public class VonNeumannEntropy {
+
+    static final double TOLERANCE = 1e-10; //relative residual of an eigenvalue
+
+    double time; //time at which the state-reductive measurement is made
+    HermitianOperator ro; //the reduced density operator of field a
+    double trace; //Tr(ro), 1 when the B coefficients are normalised
+    Lanczos solver; //eigen-solver for ro
+    Double result; //Result of -Tr(ro ln ro)
+
+    /**
+     * "raw" Von Neumann entropy constructor that accepts F factors. The F 
+     * table is filled if it is not already.
+     */
+    VonNeumannEntropy(double time, int max, F_ab fl) {
+        this.time = time;
+        fl.calculate(new int[]{0, 0, max, max});
+        this.ro = new Dense(fl.terms, max);
+        this.trace = Double.NaN;
+    }
+
+    /**
+     * Encapsulated Von Neumann entropy constructor, working on the B table
+     * that BSingleton has built for the time
+     */
+    VonNeumannEntropy(double time, EntropyParameters ep) {
+        this.time = time;
+        BSingleton bs = BSingleton.getInstance();
+        bs.init(ep);
+        B_ab bt = BSingleton.cache.get(time);
+        if (bt == null) {
+            throw new IllegalArgumentException("No B coefficients for time " + time);
+        }
+        int[] shape = bt.terms.shape();
+        this.ro = new Gram(bt.terms, shape[0], shape[1]);
+        this.trace = bt.norm * bt.norm;
+    }
+
+    /**
+     * Calculates the Von Neumann entropy from the dominant eigenvalues
+     * @return the value of von Neumann entropy for a specific time
+     */
+    public double calculate() {
+        if (result != null) {
+            return result;
+        }
+        solver = new Lanczos(ro, ro.dimension(), TOLERANCE);
+        double entropy = 0.0;
+        for (double lambda : solver.solve(ro.dimension(), trace)) {
+            if (lambda > 0.0) {
+                entropy -= lambda * Math.log(lambda);
+            }
+        }
+        result = entropy;
+        return result;
+    }
+
+    /**
+     * @return the eigenvalues found by the last calculation, largest first
+     */
+    public double[] getEigenvalues() {
+        return solver == null ? new double[0] : solver.getEigenvalues();
+    }
+
+    /**
+     * @return the part of the trace not carried by the eigenvalues found, NaN
+     *         if the trace is not known
+     */
+    public double getResidualWeight() {
+        double sum = 0.0;
+        for (double lambda : getEigenvalues()) {
+            sum += lambda;
+        }
+        return trace - sum;
+    }
+
+    /**
+     * A = M M^H for a complex rows x cols matrix M held in matrix stores, such
+     * as the reduced density operator B B^H. A product with A is a product
+     * with M^H, accumulated row by row, then with M.
+     */
+    static class Gram implements HermitianOperator {
+
+        final MatrixStore re, im; //parts of M, flattened by rows
+        final int rows, cols; //shape of M
+        final double[] rowRe, rowIm; //scratch for a row of an off-heap M
+        final double[] zRe, zIm; //conj(M^H x)
+
+        Gram(MemoizedSequence m, int rows, int cols) {
+            this.re = m.re;
+            this.im = m.im;
+            this.rows = rows;
+            this.cols = cols;
+            this.rowRe = new double[cols];
+            this.rowIm = new double[cols];
+            this.zRe = new double[cols];
+            this.zIm = new double[cols];
+        }
+
+        @Override
+        public int dimension() {
+            return rows;
+        }
+
+        @Override
+        public void apply(double[] xRe, double[] xIm, double[] yRe, double[] yIm) {
+            Arrays.fill(zRe, 0.0);
+            Arrays.fill(zIm, 0.0);
+            for (int n = 0; n < rows; n++) {
+                int off = load(n);
+                double[] mRe = re.array() != null ? re.array() : rowRe;
+                double[] mIm = im.array() != null ? im.array() : rowIm;
+                double xr = xRe[n];
+                double xi = xIm[n];
+                //z(l) += M(n,l) conj(x(n)), so z = conj(M^H x)
+                for (int l = 0; l < cols; l++) {
+                    zRe[l] += mRe[off + l] * xr + mIm[off + l] * xi;
+                    zIm[l] += mIm[off + l] * xr - mRe[off + l] * xi;
+                }
+            }
+            //y(n) = Sum[M(n,l) conj(z(l))]
+            Kernels kernels = Kernels.getInstance();
+            for (int n = 0; n < rows; n++) {
+                int off = load(n);
+                double[] mRe = re.array() != null ? re.array() : rowRe;
+                double[] mIm = im.array() != null ? im.array() : rowIm;
+                Complex y = kernels.dotConj(mRe, mIm, off, zRe, zIm, 0, cols);
+                yRe[n] = y.real();
+                yIm[n] = y.imag();
+            }
+        }
+
+        /*
+         * Offset of row n in the arrays to read it from
+         */
+        int load(int n) {
+            if (re.array() != null && im.array() != null) {
+                return n * cols;
+            }
+            re.copyTo(n * cols, rowRe, 0, cols);
+            im.copyTo(n * cols, rowIm, 0, cols);
+            return 0;
+        }
+    }
+
+    /**
+     * A Hermitian n x n matrix held in matrix stores, such as a filled F table
+     */
+    static class Dense extends Gram {
+
+        Dense(MemoizedSequence a, int n) {
+            super(a, n, n);
+        }
+
+        @Override
+        public void apply(double[] xRe, double[] xIm, double[] yRe, double[] yIm) {
+            for (int l = 0; l < cols; l++) {
+                zRe[l] = xRe[l];
+                zIm[l] = -xIm[l];
+            }
+            Kernels kernels = Kernels.getInstance();
+            for (int n = 0; n < rows; n++) {
+                int off = load(n);
+                double[] aRe = re.array() != null ? re.array() : rowRe;
+                double[] aIm = im.array() != null ? im.array() : rowIm;
+                Complex y = kernels.dotConj(aRe, aIm, off, zRe, zIm, 0, cols);
+                yRe[n] = y.real();
+                yIm[n] = y.imag();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and Vector API loop kernels on rows of the lengths the
+ * coefficient tables use. The forks add the incubating vector module, so the
+ * vector kernels are always available here.
+ *
+ * @author forest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+
+    @Param({"16", "81", "256"})
+    int length; //number of elements in a row
+
+    @Param({"scalar", "vector"})
+    String backend; //which kernels to measure
+
+    Kernels kernels; //the kernels measured
+    double[] re; //real parts of two rows
+    double[] im; //imaginary parts of two rows
+    double[] out; //a row of roots
+
+    @Setup(Level.Trial)
+    public void setup() {
+        kernels = "scalar".equals(backend) ? new ScalarKernels() : Kernels.getInstance();
+        if (!"scalar".equals(backend) && kernels instanceof ScalarKernels) {
+            throw new IllegalStateException("Vector API not available");
+        }
+        Random random = new Random(42);
+        re = new double[2 * length];
+        im = new double[2 * length];
+        for (int i = 0; i < re.length; i++) {
+            re[i] = random.nextGaussian();
+            im[i] = random.nextGaussian();
+        }
+        out = new double[length];
+    }
+
+    @Benchmark
+    public Complex dotConj() {
+        return kernels.dotConj(re, im, 0, re, im, length, length);
+    }
+
+    @Benchmark
+    public double squaredModulus() {
+        return kernels.squaredModulus(re, im, 0, 2 * length);
+    }
+
+    @Benchmark
+    public double[] sqrtRamp() {
+        kernels.sqrtRamp(3.0, 1.5, out, length);
+        return out;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures every stage of the linear entropy pipeline in isolation: factorials,
+ * Q coefficients, the C_0 table, N_0, the B coefficient build, the F table,
+ * Tr(ro squared) and full linear and von Neumann entropy time sweeps.
+ *
+ * The number of summation terms is alpha1sq * alpha2sq (at least 16), so
+ * photons = 2, 3, 4 gives tables of 16, 81 and 256 rows. Core count scaling is
+ * measured by forking with -XX:ActiveProcessorCount, see ScalingReport.
+ *
+ * @author forest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"2", "3", "4"})
+    int photons; //average initial photons in each field
+
+    @Param({"1", "4"})
+    int timeSteps; //number of scaled time increments in the run
+
+    int max; //the number of terms in every sum
+    double time; //last time of the run, at which single-step stages run
+    EntropyParameters ep; //initialised parameters shared by the later stages
+    F_ab fl; //filled F table for the Tr(ro squared) stage
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ep = newParameters();
+        max = ep.max();
+        time = (double) (timeSteps - 1) * ep.interval;
+        BSingleton.getInstance().init(ep);
+        fl = new F_ab(time, ep);
+        fl.calculate(new int[]{0, 0, max, max});
+    }
+
+    /**
+     * Parameters for a one unit run split into timeSteps increments. A new
+     * object is needed whenever a stage should not reuse singleton state.
+     */
+    EntropyParameters newParameters() {
+        double[] params = {50.0, 1.0, 1.0, photons, photons, 0.0, 1, 1.0 / timeSteps};
+        return new EntropyParameters(params);
+    }
+
+    @Benchmark
+    public BigInteger factorials() {
+        FactorialSingleton fs = FactorialSingleton.getInstance();
+        fs.clear();
+        fs.init(max);
+        return fs.getFactorial(max);
+    }
+
+    @Benchmark
+    public Object qCoefficients() {
+        Q_ab qt = Q_ab.getInstance();
+        qt.init(newParameters());
+        return qt.terms;
+    }
+
+    @Benchmark
+    public Object c0Table() {
+        C_0 ct = new C_0(time, ep);
+        ct.calculate(new int[]{max, max});
+        return ct.terms;
+    }
+
+    @Benchmark
+    public double n0() {
+        return new N_0(time, ep).calculate();
+    }
+
+    @Benchmark
+    public Object bCoefficients() {
+        BSingleton bs = BSingleton.getInstance();
+        bs.params = null; //force a rebuild; Q_ab keeps its table for ep
+        bs.init(ep);
+        return BSingleton.cache;
+    }
+
+    @Benchmark
+    public Object fTable() {
+        F_ab f = new F_ab(time, ep);
+        f.calculate(new int[]{0, 0, max, max});
+        return f.terms;
+    }
+
+    @Benchmark
+    public double trRoSquared() {
+        return new TrRoSquared(max, fl).calculate();
+    }
+
+    @Benchmark
+    public double fusedTrRoSquared() {
+        return TrRoSquared.fused(BSingleton.getInstance().table(time), max, FieldMode.A);
+    }
+
+    @Benchmark
+    public void linearEntropySweep(Blackhole bh) {
+        for (int t = 0; t < ep.maxtime / ep.interval; t++) {
+            bh.consume(new LinearEntropy(t * ep.interval, ep).calculate());
+        }
+    }
+
+    @Benchmark
+    public void vonNeumannEntropySweep(Blackhole bh) {
+        for (int t = 0; t < ep.maxtime / ep.interval; t++) {
+            bh.consume(new VonNeumannEntropy(t * ep.interval, ep).calculate());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once per core count, with the allocation
+ * profiler attached, and prints a table of score, speedup over the smallest
+ * core count and normalised allocation per operation. Each core count is a
+ * separate fork limited with -XX:ActiveProcessorCount, so every ForkJoinPool
+ * in the package sizes itself as it would on a smaller machine.
+ *
+ * Usage: ScalingReport [-c 1,2,4,8] [-o report file] [JMH options]
+ * The JMH options are those of the benchmarks.jar command line, e.g. a
+ * benchmark regex and -p photons=4; the default is every PipelineBenchmark.
+ *
+ * @author forest
+ */
+public class ScalingReport {
+
+    public static void main(String[] args)
+            throws RunnerException, IOException, CommandLineOptionException {
+        int[] cores = defaultCores();
+        String file = null;
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-c".equals(args[i]) && i + 1 < args.length) {
+                cores = parseCores(args[++i]);
+            } else if ("-o".equals(args[i]) && i + 1 < args.length) {
+                file = args[++i];
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+        CommandLineOptions cmd = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+
+        //benchmark label -> core count -> result
+        Map<String, Map<Integer, RunResult>> results = new LinkedHashMap<>();
+        for (int c : cores) {
+            OptionsBuilder builder = new OptionsBuilder();
+            if (cmd.getIncludes().isEmpty()) {
+                builder.include("PipelineBenchmark");
+            }
+            Options opts = builder.parent(cmd)
+                    .addProfiler(GCProfiler.class)
+                    .jvmArgsAppend("-XX:ActiveProcessorCount=" + c)
+                    .build();
+            for (RunResult r : new Runner(opts).run()) {
+                results.computeIfAbsent(label(r), k -> new LinkedHashMap<>()).put(c, r);
+            }
+        }
+
+        StringWriter report = new StringWriter();
+        PrintWriter out = new PrintWriter(report);
+        out.printf("%-70s %5s %14s %10s %8s %16s%n",
+                "Benchmark", "Cores", "Score", "Error", "Speedup", "Alloc (B/op)");
+        for (Map.Entry<String, Map<Integer, RunResult>> e : results.entrySet()) {
+            Double base = null;
+            for (Map.Entry<Integer, RunResult> rc : e.getValue().entrySet()) {
+                Result primary = rc.getValue().getPrimaryResult();
+                if (base == null) {
+                    base = primary.getScore();
+                }
+                out.printf("%-70s %5d %14.4f %10.4f %8.2f %16.1f  %s%n",
+                        e.getKey(), rc.getKey(), primary.getScore(),
+                        primary.getScoreError(), base / primary.getScore(),
+                        allocation(rc.getValue()), primary.getScoreUnit());
+            }
+        }
+        out.flush();
+        System.out.print(report);
+        if (file != null) {
+            Files.write(Paths.get(file), report.toString().getBytes());
+        }
+    }
+
+    /*
+     * Benchmark name with its parameters, which identifies one scaling series
+     */
+    static String label(RunResult r) {
+        StringBuilder sb = new StringBuilder(r.getParams().getBenchmark()
+                .replace("nestedsums.", ""));
+        for (String key : r.getParams().getParamsKeys()) {
+            sb.append(' ').append(key).append('=').append(r.getParams().getParam(key));
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Normalised allocation rate reported by the gc profiler, NaN if missing
+     */
+    static double allocation(RunResult r) {
+        for (Map.Entry<String, Result> e : r.getSecondaryResults().entrySet()) {
+            if (e.getKey().endsWith("gc.alloc.rate.norm")) {
+                return e.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+
+    static int[] parseCores(String list) {
+        String[] parts = list.split(",");
+        int[] cores = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            cores[i] = Integer.parseInt(parts[i].trim());
+        }
+        return cores;
+    }
+
+    /*
+     * Powers of two up to the available processors, plus the processor count
+     */
+    static int[] defaultCores() {
+        int n = Runtime.getRuntime().availableProcessors();
+        List<Integer> cores = new ArrayList<>();
+        for (int c = 1; c < n; c <<= 1) {
+            cores.add(c);
+        }
+        cores.add(n);
+        return cores.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
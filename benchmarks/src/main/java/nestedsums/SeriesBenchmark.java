@@ -0,0 +1,144 @@
+/**
+ * The nestedsums package collects summation methods for large nested series
+ * to support the batch calculation of quantum electrodynamics model statistics,
+ * such as linear entropy.
+ *
+ * In general, quantum probabilities and quasi-probability values are near 0 and
+ * 1, so double precision arithmetic is favored for speed with sufficient
+ * accuracy - 4 or 5 significant figures in the worst case. Some calculations
+ * require very large number calculations in their constituent parts, which
+ * represents a performance bottleneck if applied arbitrarily.
+ */
+package nestedsums;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the generic summation engines on a synthetic Poisson weighted term,
+ * which has the same shape as the coefficient series of the linear entropy
+ * pipeline without depending on any of the singletons.
+ *
+ * @author forest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeriesBenchmark {
+
+    @Param({"16", "64", "256"})
+    int max; //number of terms in every dimension
+
+    @Param({"2"})
+    int depth; //number of nested sums
+
+    double[] weights; //Poisson weights, mean max/4
+    Sequence terms; //product of the weights at every index
+    SeparableSequence separable; //the same product, declared separable
+
+    @Setup(Level.Trial)
+    public void setup() {
+        double mean = max / 4.0;
+        weights = new double[max];
+        weights[0] = Math.exp(-mean);
+        for (int i = 1; i < max; i++) {
+            weights[i] = weights[i - 1] * mean / i;
+        }
+        terms = indices -> {
+            double w = 1.0;
+            for (int i = 0; i < depth; i++) {
+                w *= weights[indices[i]];
+            }
+            return w;
+        };
+        Sequence[] factors = new Sequence[depth];
+        Arrays.fill(factors, (Sequence) indices -> weights[indices[0]]);
+        separable = new SeparableSequence(factors);
+    }
+
+    /**
+     * Worker threads for the fork-join engine. Only the concurrent benchmark
+     * uses this state, so the sequential one is not repeated per thread count.
+     */
+    @State(Scope.Benchmark)
+    public static class Workers {
+
+        @Param({"1", "2", "4"})
+        int threads;
+
+        ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            pool = new ForkJoinPool(threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public double series() {
+        return new Series(terms, max, depth).calculate();
+    }
+
+    @Benchmark
+    public double symmetricSeries() {
+        return new Series(terms, max, depth, Symmetry.SYMMETRIC).calculate();
+    }
+
+    @Benchmark
+    public double separableSeries() {
+        return new Series(separable, max, depth).calculate();
+    }
+
+    @Benchmark
+    public double triangularSeries() {
+        return new Series(terms, depth, IndexBounds.triangular(depth, max)).calculate();
+    }
+
+    @Benchmark
+    public double acceleratedSeries() {
+        return new Series(terms, max, depth, new Acceleration(Acceleration.Method.WYNN)).calculate();
+    }
+
+    @Benchmark
+    public double compensatedSeries() {
+        return new Series(terms, max, depth, Summation.COMPENSATED).calculate();
+    }
+
+    @Benchmark
+    public double doubleDoubleSeries() {
+        return new Series(terms, max, depth, Summation.DOUBLE_DOUBLE).calculate();
+    }
+
+    @Benchmark
+    public double concurrentSeries(Workers workers) {
+        int[] indices = new int[depth << 1];
+        for (int i = depth; i < indices.length; i++) {
+            indices[i] = max;
+        }
+        ConcurrentSeries sum = new ConcurrentSeries(terms, indices);
+        workers.pool.invoke(sum);
+        return sum.value;
+    }
+}